@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+
+/**
+ * Measures {@link RI#record} from 1, 8 and 32 threads, each thread recording a rotating
+ * set of types that overlaps with the other threads, as happens when beans are created
+ * in parallel.
+ *
+ * @author Andy Clement
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordBenchmark {
+
+	private static final Class<?>[] TYPES = { String.class, Integer.class, Long.class, Object.class, Thread.class,
+			Runnable.class, File.class, IOException.class, StringBuilder.class, Math.class, Character.class,
+			Boolean.class, Short.class, Byte.class, Double.class, Float.class };
+
+	@State(Scope.Benchmark)
+	public static class Recorder {
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			// The inactivity dumper writes the data once the benchmark is over
+			File reflectFile = File.createTempFile("record-benchmark", ".json");
+			reflectFile.deleteOnExit();
+			Configuration.reflectFile = reflectFile.getAbsolutePath();
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int next;
+
+		Class<?> nextType() {
+			Class<?> type = TYPES[this.next];
+			this.next = (this.next + 1) % TYPES.length;
+			return type;
+		}
+
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void record1(Recorder recorder, Cursor cursor) {
+		RI.record(ReflectiveCall.CLASS_GETMETHODS, cursor.nextType());
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void record8(Recorder recorder, Cursor cursor) {
+		RI.record(ReflectiveCall.CLASS_GETMETHODS, cursor.nextType());
+	}
+
+	@Benchmark
+	@Threads(32)
+	public void record32(Recorder recorder, Cursor cursor) {
+		RI.record(ReflectiveCall.CLASS_GETMETHODS, cursor.nextType());
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Compares reading and writing a large reflect.json by way of a JSON tree against
+ * streaming it, and against reading the binary form. Run with {@code -prof gc} to compare allocation as well as time.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JsonMarshallerBenchmark {
+
+	private static final int MEMBERS = 100_000;
+
+	private static final int MEMBERS_PER_CLASS = 50;
+
+	private final JsonMarshaller marshaller = new JsonMarshaller();
+
+	private final OutputStream discard = new OutputStream() {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+
+	};
+
+	private ReflectionDescriptor metadata;
+
+	private byte[] json;
+
+	private byte[] binary;
+
+	@Setup
+	public void setup() throws IOException {
+		this.metadata = new ReflectionDescriptor();
+		for (int c = 0; c < MEMBERS / MEMBERS_PER_CLASS; c++) {
+			ClassDescriptor cd = ClassDescriptor.of("com.example.generated.Type" + c);
+			cd.setFlag(Flag.allDeclaredConstructors);
+			for (int m = 0; m < MEMBERS_PER_CLASS; m++) {
+				if (m % 5 == 0) {
+					cd.addFieldDescriptor(new FieldDescriptor("field" + m, m % 2 == 0));
+				}
+				else {
+					cd.addMethodDescriptor(new MethodDescriptor("method" + m,
+							Arrays.asList("java.lang.String", "com.example.generated.Type" + m + "[]")));
+				}
+			}
+			this.metadata.add(cd);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		this.marshaller.write(this.metadata, bytes);
+		this.json = bytes.toByteArray();
+		bytes = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(this.metadata, bytes);
+		this.binary = bytes.toByteArray();
+	}
+
+	@Benchmark
+	public void writeTree() throws Exception {
+		this.discard.write(JsonMarshaller.toJsonArray(this.metadata).toString(2).getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public void writeStreaming() throws IOException {
+		this.marshaller.write(this.metadata, this.discard);
+	}
+
+	@Benchmark
+	public ReflectionDescriptor readTree() throws Exception {
+		return JsonMarshaller.read(new JSONArray(new String(this.json, StandardCharsets.UTF_8)));
+	}
+
+	@Benchmark
+	public ReflectionDescriptor readStreaming() throws Exception {
+		return JsonMarshaller.read(new ByteArrayInputStream(this.json));
+	}
+
+	@Benchmark
+	public ReflectionDescriptor readBinary() throws Exception {
+		return BinaryMarshaller.read(new ByteArrayInputStream(this.binary));
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Compares merging class descriptors into the indexed {@link ReflectionInfoCollector}
+ * against the linear scan of the registry it replaced. A fifth of the descriptors name a
+ * type that is already present.
+ *
+ * @author Andy Clement
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReflectionInfoCollectorBenchmark {
+
+	@Param({ "5000", "50000" })
+	private int count;
+
+	private ProcessingEnvironment env;
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private List<ClassDescriptor> descriptors;
+
+	@Setup
+	public void setup() throws InterruptedException {
+		// The environment is only usable during processing, hold the compilation in its
+		// processing round until the benchmark is over
+		CountDownLatch started = new CountDownLatch(1);
+		Thread compilation = new Thread(() -> TestProcessingEnvironment.run(env -> {
+			this.env = env;
+			started.countDown();
+			try {
+				this.done.await();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		compilation.setDaemon(true);
+		compilation.start();
+		started.await();
+		int distinct = this.count * 4 / 5;
+		this.descriptors = new ArrayList<>(this.count);
+		for (int i = 0; i < this.count; i++) {
+			ClassDescriptor cd = ClassDescriptor.of(String
+					.format("org.springframework.boot.autoconfigure.sample.Sample%05dAutoConfiguration", i % distinct));
+			cd.setFlag(i < distinct ? Flag.allDeclaredConstructors : Flag.allDeclaredMethods);
+			this.descriptors.add(cd);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.done.countDown();
+	}
+
+	@Benchmark
+	public ReflectionInfoCollector indexedMerge() {
+		ReflectionInfoCollector collector = new ReflectionInfoCollector(this.env, null);
+		for (ClassDescriptor cd : this.descriptors) {
+			collector.mergeClassDescriptor(cd.copy());
+		}
+		return collector;
+	}
+
+	@Benchmark
+	public List<ClassDescriptor> linearScanMerge() {
+		List<ClassDescriptor> registry = new ArrayList<>();
+		for (ClassDescriptor cd : this.descriptors) {
+			ClassDescriptor exists = null;
+			for (ClassDescriptor candidate : registry) {
+				if (candidate.getName().equals(cd.getName())) {
+					exists = candidate;
+					break;
+				}
+			}
+			if (exists == null) {
+				registry.add(cd.copy());
+			}
+			else {
+				exists.merge(cd);
+			}
+		}
+		return registry;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+
+/**
+ * Counts the intercepted reflective calls by kind of call, caller site and reflected
+ * member. Only names are kept, never the arguments of the calls, and each name is held
+ * once however many sites refer to it, so memory grows with the number of distinct sites
+ * rather than with the number of calls.
+ *
+ * @author Andy Clement
+ */
+class CallSiteStore {
+
+	private final Map<CallSite, LongAdder> counts = new ConcurrentHashMap<>();
+
+	private final Map<String, String> names = new ConcurrentHashMap<>();
+
+	/**
+	 * Count a call.
+	 * @param type the kind of call
+	 * @param caller the frame that made the call
+	 * @param arguments the arguments of the call, the reflected type or member first
+	 */
+	void record(ReflectiveCall type, StackTraceElement caller, Object[] arguments) {
+		CallSite site = new CallSite(type, caller.getClassName(), caller.getMethodName(), caller.getLineNumber(),
+				getTargetName(arguments[0]), getMemberName(arguments));
+		// computeIfAbsent locks the bin even when the key is present, look up first
+		LongAdder count = this.counts.get(site);
+		if (count == null) {
+			count = this.counts.computeIfAbsent(site.withNames(this::intern), (k) -> new LongAdder());
+		}
+		count.increment();
+	}
+
+	/**
+	 * @return the number of distinct (call type, caller site, member) combinations
+	 */
+	int getSiteCount() {
+		return this.counts.size();
+	}
+
+	/**
+	 * @return the total number of calls recorded
+	 */
+	long getCallCount() {
+		long total = 0;
+		for (LongAdder count : this.counts.values()) {
+			total += count.sum();
+		}
+		return total;
+	}
+
+	/**
+	 * Pass each site and its count to the consumer.
+	 * @param consumer the consumer
+	 */
+	void forEach(BiConsumer<CallSite, Long> consumer) {
+		this.counts.forEach((site, count) -> consumer.accept(site, count.sum()));
+	}
+
+	void clear() {
+		this.counts.clear();
+		this.names.clear();
+	}
+
+	private String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+		String existing = this.names.putIfAbsent(name, name);
+		return (existing != null) ? existing : name;
+	}
+
+	private static String getTargetName(Object target) {
+		if (target instanceof Member) {
+			return ((Member) target).getDeclaringClass().getName();
+		}
+		if (target instanceof Annotation) {
+			return ((Annotation) target).annotationType().getName();
+		}
+		return (target instanceof Class) ? ((Class<?>) target).getName() : String.valueOf(target);
+	}
+
+	private static String getMemberName(Object[] arguments) {
+		Object target = arguments[0];
+		if (target instanceof Constructor) {
+			return "<init>";
+		}
+		if (target instanceof Member) {
+			return ((Member) target).getName();
+		}
+		// getDeclaredMethod(name, ...), getField(name)...
+		if (target instanceof Class && arguments.length > 1 && arguments[1] instanceof String) {
+			return (String) arguments[1];
+		}
+		return null;
+	}
+
+	/**
+	 * A kind of call made from a line of code on a type or member.
+	 */
+	static final class CallSite {
+
+		private final ReflectiveCall type;
+
+		private final String callerClass;
+
+		private final String callerMethod;
+
+		private final int line;
+
+		private final String target;
+
+		private final String member;
+
+		private final int hash;
+
+		CallSite(ReflectiveCall type, String callerClass, String callerMethod, int line, String target,
+				String member) {
+			this.type = type;
+			this.callerClass = callerClass;
+			this.callerMethod = callerMethod;
+			this.line = line;
+			this.target = target;
+			this.member = member;
+			int hash = type.ordinal();
+			hash = 31 * hash + callerClass.hashCode();
+			hash = 31 * hash + callerMethod.hashCode();
+			hash = 31 * hash + line;
+			hash = 31 * hash + target.hashCode();
+			this.hash = 31 * hash + ((member != null) ? member.hashCode() : 0);
+		}
+
+		private CallSite withNames(UnaryOperator<String> intern) {
+			return new CallSite(this.type, intern.apply(this.callerClass), intern.apply(this.callerMethod), this.line,
+					intern.apply(this.target), intern.apply(this.member));
+		}
+
+		ReflectiveCall getType() {
+			return this.type;
+		}
+
+		String getCallerClass() {
+			return this.callerClass;
+		}
+
+		/**
+		 * @return the caller as {@code class.method:line}
+		 */
+		String getCaller() {
+			return this.callerClass + "." + this.callerMethod + ":" + this.line;
+		}
+
+		/**
+		 * @return the reflected type, or member as {@code type.member}
+		 */
+		String getMember() {
+			return (this.member != null) ? this.target + "." + this.member : this.target;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof CallSite)) {
+				return false;
+			}
+			CallSite other = (CallSite) obj;
+			return this.hash == other.hash && this.type == other.type && this.line == other.line
+					&& this.callerClass.equals(other.callerClass) && this.callerMethod.equals(other.callerMethod)
+					&& this.target.equals(other.target)
+					&& ((this.member != null) ? this.member.equals(other.member) : other.member == null);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public String toString() {
+			return this.type + " " + getMember() + " from " + getCaller();
+		}
+
+	}
+
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+
+/**
+ * Finds the code that made an intercepted reflective call. Capturing the caller is most
+ * of what the agent adds to each call, so there is a choice of strategy:
+ * <ul>
+ * <li>{@code full} - takes the whole stack of the calling thread</li>
+ * <li>{@code bounded} - looks at no more frames than needed, with {@code StackWalker} on
+ * Java 9+ and through the JDK's lazy access to the frames of a throwable on Java 8</li>
+ * <li>{@code firstPerSite} - identifies the calling class without walking the stack and
+ * only captures the frame the first time that class makes each kind of call, that frame
+ * then stands for the later calls (so their line numbers are not captured)</li>
+ * </ul>
+ * The caller is the frame after the interceptor that called {@code RI.record}, frames
+ * in {@code AnnotatedElementUtils} are skipped as they only pass the calls on.
+ * {@link #capture} must be called directly from {@code RI.record}.
+ *
+ * @author Andy Clement
+ */
+abstract class CallerCapture {
+
+	static final String FULL = "full";
+
+	static final String BOUNDED = "bounded";
+
+	static final String FIRST_PER_SITE = "firstPerSite";
+
+	// Deep enough for nested AnnotatedElementUtils calls, a caller further away is found
+	// from the full stack
+	private static final int MAX_DEPTH = 32;
+
+	private static final String RI_CLASS = RI.class.getName();
+
+	private static final StackTraceElement NOT_FOUND = new StackTraceElement("?", "?", null, -1);
+
+	/**
+	 * Create the capture for a mode.
+	 * @param mode {@code full}, {@code bounded} or {@code firstPerSite}, {@code null}
+	 * for the default ({@code bounded})
+	 * @return the capture
+	 */
+	static CallerCapture of(String mode) {
+		if (FULL.equalsIgnoreCase(mode)) {
+			return new FullCapture();
+		}
+		if (FIRST_PER_SITE.equalsIgnoreCase(mode)) {
+			return new FirstPerSiteCapture();
+		}
+		if (mode != null && !BOUNDED.equalsIgnoreCase(mode)) {
+			System.out.println("Unknown caller capture mode '" + mode + "', using " + BOUNDED);
+		}
+		if (StackWalkerSupport.INSTANCE != null) {
+			return new StackWalkerCapture();
+		}
+		if (ThrowableCapture.STACK_TRACE_DEPTH != null) {
+			return new ThrowableCapture();
+		}
+		return new FullCapture();
+	}
+
+	/**
+	 * @return a handle on a JDK internal static method, {@code null} if this JDK does not
+	 * have it
+	 */
+	private static MethodHandle findStatic(String className, String name, MethodType type) {
+		try {
+			return MethodHandles.publicLookup().findStatic(Class.forName(className), name, type);
+		}
+		catch (Exception | LinkageError ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param type the kind of reflective call
+	 * @return the frame of the caller, or {@code null} if the call was made by
+	 * {@code RI} itself and should not be recorded
+	 */
+	abstract StackTraceElement capture(ReflectiveCall type);
+
+	/**
+	 * Find the caller in a complete stack.
+	 * @param stack the stack, including the {@code RI.record} frame
+	 * @return the frame of the caller, or {@code null} if the call was made by
+	 * {@code RI} itself or there is no {@code RI.record} frame
+	 */
+	static StackTraceElement findCaller(StackTraceElement[] stack) {
+		StackTraceElement caller = findCallerIn(Arrays.asList(stack).iterator());
+		return (caller != NOT_FOUND) ? caller : null;
+	}
+
+	/**
+	 * @return the caller, {@code null} if it is {@code RI}, or {@link #NOT_FOUND} if the
+	 * frames ran out first
+	 */
+	private static StackTraceElement findCallerIn(Iterator<StackTraceElement> frames) {
+		while (frames.hasNext()) {
+			StackTraceElement frame = frames.next();
+			if (isRecord(frame.getClassName(), frame.getMethodName())) {
+				// The next frame is the interceptor
+				if (frames.hasNext()) {
+					frames.next();
+				}
+				while (frames.hasNext()) {
+					StackTraceElement caller = frames.next();
+					if (!caller.getClassName().contains("AnnotatedElementUtils")) {
+						return RI_CLASS.equals(caller.getClassName()) ? null : caller;
+					}
+				}
+				break;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private static boolean isRecord(String className, String methodName) {
+		return RI_CLASS.equals(className) && "record".equals(methodName);
+	}
+
+	private static class FullCapture extends CallerCapture {
+
+		@Override
+		StackTraceElement capture(ReflectiveCall type) {
+			return findCaller(Thread.currentThread().getStackTrace());
+		}
+
+	}
+
+	/**
+	 * Bounded capture for Java 8, filling in the stack of a throwable is cheap, it is
+	 * creating a {@link StackTraceElement} for every frame that costs and the JDK can
+	 * create them one at a time. Its {@code JavaLangAccess} is reached through method
+	 * handles so that the agent builds on any JDK.
+	 */
+	private static class ThrowableCapture extends CallerCapture {
+
+		// (Throwable)int and (Throwable,int)StackTraceElement, bound to JavaLangAccess
+		static final MethodHandle STACK_TRACE_DEPTH;
+
+		static final MethodHandle STACK_TRACE_ELEMENT;
+
+		static {
+			MethodHandle depth = null;
+			MethodHandle element = null;
+			try {
+				Class<?> accessClass = Class.forName("sun.misc.JavaLangAccess");
+				Object access = Class.forName("sun.misc.SharedSecrets").getMethod("getJavaLangAccess").invoke(null);
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				depth = lookup.findVirtual(accessClass, "getStackTraceDepth",
+						MethodType.methodType(int.class, Throwable.class)).bindTo(access);
+				element = lookup.findVirtual(accessClass, "getStackTraceElement",
+						MethodType.methodType(StackTraceElement.class, Throwable.class, int.class)).bindTo(access);
+			}
+			catch (Exception | LinkageError ex) {
+				depth = null;
+				element = null;
+			}
+			STACK_TRACE_DEPTH = depth;
+			STACK_TRACE_ELEMENT = element;
+		}
+
+		@Override
+		StackTraceElement capture(ReflectiveCall type) {
+			Throwable throwable = new Throwable();
+			int depth;
+			try {
+				depth = Math.min((int) STACK_TRACE_DEPTH.invokeExact(throwable), MAX_DEPTH);
+			}
+			catch (Throwable ex) {
+				return findCaller(throwable.getStackTrace());
+			}
+			StackTraceElement caller = findCallerIn(new Iterator<StackTraceElement>() {
+
+				private int next;
+
+				@Override
+				public boolean hasNext() {
+					return this.next < depth;
+				}
+
+				@Override
+				public StackTraceElement next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					try {
+						return (StackTraceElement) STACK_TRACE_ELEMENT.invokeExact(throwable, this.next++);
+					}
+					catch (Throwable ex) {
+						throw new IllegalStateException(ex);
+					}
+				}
+
+			});
+			return (caller != NOT_FOUND) ? caller : findCaller(throwable.getStackTrace());
+		}
+
+	}
+
+	private static class StackWalkerCapture extends CallerCapture {
+
+		@Override
+		StackTraceElement capture(ReflectiveCall type) {
+			StackTraceElement caller = StackWalkerSupport.INSTANCE.findCaller();
+			return (caller != NOT_FOUND) ? caller : findCaller(Thread.currentThread().getStackTrace());
+		}
+
+	}
+
+	private static class FirstPerSiteCapture extends CallerCapture {
+
+		// Java 8 only, StackWalker finds the caller class on later versions
+		private static final MethodHandle GET_CALLER_CLASS = findStatic("sun.reflect.Reflection", "getCallerClass",
+				MethodType.methodType(Class.class, int.class));
+
+		private final CallerCapture bounded = of(BOUNDED);
+
+		// The frame captured for each kind of call made by a class
+		private final ClassValue<AtomicReferenceArray<StackTraceElement>> sites = new ClassValue<AtomicReferenceArray<StackTraceElement>>() {
+
+			@Override
+			protected AtomicReferenceArray<StackTraceElement> computeValue(Class<?> type) {
+				return new AtomicReferenceArray<>(ReflectiveCall.values().length);
+			}
+
+		};
+
+		@Override
+		StackTraceElement capture(ReflectiveCall type) {
+			Class<?> callerClass = (StackWalkerSupport.INSTANCE != null) ? StackWalkerSupport.INSTANCE.findCallerClass()
+					: getCallerClass();
+			if (callerClass == RI.class) {
+				return null;
+			}
+			if (callerClass == null || callerClass.getName().contains("AnnotatedElementUtils")) {
+				// The site is further out and only a walk can find it
+				return this.bounded.capture(type);
+			}
+			AtomicReferenceArray<StackTraceElement> frames = this.sites.get(callerClass);
+			StackTraceElement caller = frames.get(type.ordinal());
+			if (caller == null) {
+				caller = this.bounded.capture(type);
+				if (caller != null) {
+					frames.compareAndSet(type.ordinal(), null, caller);
+				}
+			}
+			return caller;
+		}
+
+		/**
+		 * @return the class that called the interceptor, {@code null} if it cannot be
+		 * determined without walking the stack
+		 */
+		private static Class<?> getCallerClass() {
+			if (GET_CALLER_CLASS == null) {
+				return null;
+			}
+			try {
+				// 0 = Reflection, 1 = getCallerClass(), 2 = capture(), 3 = RI.record, 4 = interceptor,
+				// the method handle adds no visible frames
+				return (Class<?>) GET_CALLER_CLASS.invokeExact(5);
+			}
+			catch (Throwable ex) {
+				return null;
+			}
+		}
+
+	}
+
+	/**
+	 * Access to {@code java.lang.StackWalker} through method handles, as the agent is
+	 * built for Java 8. Only the class and method name of each frame are looked at until
+	 * the caller is found, creating a {@link StackTraceElement} is left to the caller's
+	 * frame.
+	 */
+	private static final class StackWalkerSupport {
+
+		static final StackWalkerSupport INSTANCE = create();
+
+		private final Object walker;
+
+		private final MethodHandle walk;
+
+		private final MethodHandle getDeclaringClass;
+
+		private final MethodHandle getMethodName;
+
+		private final MethodHandle toStackTraceElement;
+
+		private final Function<Stream<Object>, Object> callerFinder = this::findCaller;
+
+		private final Function<Stream<Object>, Object> callerClassFinder = this::findCallerClass;
+
+		private StackWalkerSupport() throws Exception {
+			Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+			Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+			Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+			Object retainClassReference = optionClass.getField("RETAIN_CLASS_REFERENCE").get(null);
+			this.walker = walkerClass.getMethod("getInstance", optionClass).invoke(null, retainClassReference);
+			// walk() is caller sensitive, it cannot be looked up with the public lookup
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			this.walk = lookup.unreflect(walkerClass.getMethod("walk", Function.class))
+					.asType(MethodType.methodType(Object.class, Object.class, Function.class));
+			this.getDeclaringClass = lookup.unreflect(frameClass.getMethod("getDeclaringClass"))
+					.asType(MethodType.methodType(Class.class, Object.class));
+			this.getMethodName = lookup.unreflect(frameClass.getMethod("getMethodName"))
+					.asType(MethodType.methodType(String.class, Object.class));
+			this.toStackTraceElement = lookup.unreflect(frameClass.getMethod("toStackTraceElement"))
+					.asType(MethodType.methodType(StackTraceElement.class, Object.class));
+		}
+
+		private static StackWalkerSupport create() {
+			try {
+				return new StackWalkerSupport();
+			}
+			catch (Exception ex) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return the caller, {@code null} if it is {@code RI}, or {@link #NOT_FOUND} if
+		 * the frames ran out first
+		 */
+		StackTraceElement findCaller() {
+			return (StackTraceElement) walk(this.callerFinder);
+		}
+
+		/**
+		 * @return the class that called the interceptor, {@code null} if the frames ran
+		 * out first
+		 */
+		Class<?> findCallerClass() {
+			return (Class<?>) walk(this.callerClassFinder);
+		}
+
+		private Object findCaller(Stream<Object> frames) {
+			Iterator<Object> iterator = frames.limit(MAX_DEPTH).iterator();
+			if (skipToCaller(iterator)) {
+				while (iterator.hasNext()) {
+					Object caller = iterator.next();
+					Class<?> callerClass = getDeclaringClass(caller);
+					if (!callerClass.getName().contains("AnnotatedElementUtils")) {
+						return (callerClass != RI.class) ? toStackTraceElement(caller) : null;
+					}
+				}
+			}
+			return NOT_FOUND;
+		}
+
+		private Object findCallerClass(Stream<Object> frames) {
+			Iterator<Object> iterator = frames.limit(MAX_DEPTH).iterator();
+			return (skipToCaller(iterator) && iterator.hasNext()) ? getDeclaringClass(iterator.next()) : null;
+		}
+
+		/**
+		 * Move past the {@code RI.record} frame and the interceptor frame.
+		 * @return whether they were found
+		 */
+		private boolean skipToCaller(Iterator<Object> frames) {
+			while (frames.hasNext()) {
+				Object frame = frames.next();
+				if (getDeclaringClass(frame) == RI.class && "record".equals(getMethodName(frame))) {
+					if (frames.hasNext()) {
+						frames.next();
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		private Object walk(Function<Stream<Object>, Object> function) {
+			try {
+				return (Object) this.walk.invokeExact(this.walker, function);
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		private Class<?> getDeclaringClass(Object frame) {
+			try {
+				return (Class<?>) this.getDeclaringClass.invokeExact(frame);
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		private String getMethodName(Object frame) {
+			try {
+				return (String) this.getMethodName.invokeExact(frame);
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+		private StackTraceElement toStackTraceElement(Object frame) {
+			try {
+				return (StackTraceElement) this.toStackTraceElement.invokeExact(frame);
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+	}
+
+}
@@ -37,6 +37,18 @@ public class Configuration {
 	public static boolean dontHideInfra;
 
 	public static boolean reflectionSummary;
+
+	/**
+	 * How the callers of reflective calls are captured, see {@link CallerCapture}. Set with
+	 * 'callers=full|bounded|firstPerSite', the default is bounded.
+	 */
+	public static String callers;
+
+	/**
+	 * When set the JSON lists the methods, constructors and fields used rather than all
+	 * the declared constructors and methods of each reflected type. Enable with 'precise'.
+	 */
+	public static boolean precise;
 	
 
 	private static void printUsage() {
@@ -54,9 +66,11 @@ public class Configuration {
 		System.out.println(" dontHideInfra - if specified will produce more detail (for debugging the collector itself)");
 		System.out.println("     exit - forces the process to finish once data output");
 		System.out.println(" reflectionSummary - produce a report of who is calling reflection");
+		System.out.println("  precise - only list the members reflected on, rather than all constructors and methods");
 		System.out.println("Options:");
 		System.out.println(" file=xxx - specify the name for the JSON file");
 		System.out.println(" why=xxx - specify dotted type name and it will give you stack that led to it");
+		System.out.println(" callers=full|bounded|firstPerSite - how the callers of reflective calls are captured (default bounded)");
 		System.exit(0);
 	}
 
@@ -79,6 +93,9 @@ public class Configuration {
 						} else if (key.equalsIgnoreCase("why")) {
 							whyType = kv.substring(equals + 1);
 							System.out.println("[sprinbootgraal config] check on why this type is listed = "+whyType);							
+						} else if (key.equalsIgnoreCase("callers")) {
+							callers = kv.substring(equals + 1);
+							System.out.println("[sprinbootgraal config] callers captured with = "+callers);
 						}
 					} else {
 						if (kv.equals("?")) {
@@ -92,6 +109,9 @@ public class Configuration {
 						} else if (kv.equalsIgnoreCase("reflectionSummary")) {
 							System.out.println("[sprinbootgraal config] will produce reflection summary");
 							reflectionSummary = true;
+						} else if (kv.equalsIgnoreCase("precise")) {
+							System.out.println("[sprinbootgraal config] will only output the members reflected on");
+							precise = true;
 						} else if (kv.equalsIgnoreCase("exit")) {
 							System.out.println("[sprinbootgraal config] will exit after data output");
 							exit = true;
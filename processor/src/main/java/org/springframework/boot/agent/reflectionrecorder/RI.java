@@ -28,16 +28,18 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.springframework.boot.graal.reflectconfig.BinaryMarshaller;
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
 import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
 import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+import org.springframework.boot.graal.reflectconfig.TypeNamePool;
 
 /**
  * When reflection is rewritten, the new calls invoke methods in this type.
@@ -47,9 +49,17 @@ import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
  */
 public class RI {
 
-	private static Map<ReflectiveCall, List<Info>> reflectionInvokers = new ConcurrentHashMap<>();
+	private static CallSiteStore callSites = new CallSiteStore();
 
-	public static Map<String, Integer> reflectedClasses = new HashMap<>();
+	private static ReflectedMembers reflectedMembers = new ReflectedMembers();
+
+	/**
+	 * How often each type was reflected on. Recorded from every application thread, the
+	 * counts are only summed when the data is dumped.
+	 */
+	public static Map<String, LongAdder> reflectedClasses = new ConcurrentHashMap<>();
+
+	private static final CallerCapture callerCapture = CallerCapture.of(Configuration.callers);
 
 	static Thread activityThread;
 
@@ -67,7 +77,7 @@ public class RI {
 
 	static class InactivityDumper implements Runnable {
 
-		long endTime;
+		volatile long endTime;
 
 		InactivityDumper() {
 			endTime = System.currentTimeMillis() + 5000;
@@ -93,7 +103,11 @@ public class RI {
 		}
 
 		public void ping() {
-			endTime = System.currentTimeMillis() + 5000;
+			long newEndTime = System.currentTimeMillis() + 5000;
+			// Every recording thread pings, only write the shared field when it moves on
+			if (newEndTime - endTime >= 100) {
+				endTime = newEndTime;
+			}
 		}
 
 	}
@@ -112,26 +126,41 @@ public class RI {
 		FIELD_GETDECLAREDANNOTATIONS, FIELD_GETCHAR, FIELD_GETBOOLEAN, FIELD_GETBYTE, FIELD_GETFLOAT, FIELD_GETLONG,
 		FIELD_GETSHORT, FIELD_GETDOUBLE, FIELD_ISANNOTATIONPRESENT, //
 		CONSTRUCTOR_GETDECLAREDANNOTATIONS, CONSTRUCTOR_NEWINSTANCE, FIELD_GETANNOTATION,
-		CONSTRUCTOR_ISANNOTATIONPRESENT, FIELD_SETBYTE, FIELD_SETCHAR, CLASS_NEWINSTANCE,
+		CONSTRUCTOR_ISANNOTATIONPRESENT, FIELD_SETBYTE, FIELD_SETCHAR, CLASS_NEWINSTANCE, //
+		FIELD_SET, FIELD_SETINT, FIELD_SETSHORT, FIELD_SETDOUBLE, FIELD_SETFLOAT, FIELD_SETLONG, FIELD_SETBOOLEAN,
 	}
 
 	public static void dumpData() {
 		System.out.println("Reflected types: #" + reflectedClasses.size());
 		ReflectionDescriptor rd = new ReflectionDescriptor();
 
-		for (Map.Entry<String, Integer> e : reflectedClasses.entrySet()) {
-			System.out.println("ReflectedType(Occurrences #" + e.getValue() + "): " + e.getKey());
-			if (!e.getKey().contains("CGLIB") && !e.getKey().contains("$$Lambda")) {
+		for (Map.Entry<String, LongAdder> e : reflectedClasses.entrySet()) {
+			System.out.println("ReflectedType(Occurrences #" + e.getValue().sum() + "): " + e.getKey());
+			if (!Configuration.precise && isIncluded(e.getKey())) {
 				ClassDescriptor cd = ClassDescriptor.of(e.getKey());
 				cd.setFlag(Flag.allDeclaredConstructors);
 				cd.setFlag(Flag.allDeclaredMethods);
 				rd.add(cd);
 			}
 		}
+		if (Configuration.precise) {
+			reflectedMembers.forEach(cd -> {
+				if (isIncluded(cd.getName())) {
+					rd.add(cd);
+				}
+			});
+		}
+		System.out.println("Type name pool: " + TypeNamePool.get().getStatistics());
+		System.out.println("Agent transforms: " + RecorderPreProcessor.getStatistics());
 		
-		try (FileOutputStream fos = new FileOutputStream(
-				new File(Configuration.reflectFile == null ? "reflect.json" : Configuration.reflectFile))) {
-			new JsonMarshaller().write(rd, fos);
+		String reflectFile = Configuration.reflectFile == null ? "reflect.json" : Configuration.reflectFile;
+		try (FileOutputStream fos = new FileOutputStream(new File(reflectFile))) {
+			if (reflectFile.endsWith(".bin")) {
+				new BinaryMarshaller().write(rd, fos);
+			}
+			else {
+				new JsonMarshaller().write(rd, fos);
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -139,63 +168,68 @@ public class RI {
 		if (Configuration.reflectionSummary) {
 			System.out.println("Reflection Summary");
 			// What objects are being reflected on? Who is doing the reflection?
-			int reflectiveCallCount = 0;
 			Sortable<String> whoIsMakingTheCalls = new Sortable<>();
-			for (Map.Entry<ReflectiveCall, List<Info>> entry : reflectionInvokers.entrySet()) {
-				reflectiveCallCount += entry.getValue().size();
-				for (Info info : entry.getValue()) {
-					String source = info.callingClass + "." + info.callingMethod;
-					whoIsMakingTheCalls.add(source);
-				}
-			}
-			System.out.println("Number of reflective calls: #" + reflectiveCallCount);
+			callSites.forEach((site, count) -> whoIsMakingTheCalls.add(site.getCaller(), count));
+			System.out.println("Number of reflective calls: #" + callSites.getCallCount() + " from #"
+					+ callSites.getSiteCount() + " distinct call sites");
 			System.out.println("Top 20 sources of reflection: ");
-			Map<String, Integer> sortedElements = whoIsMakingTheCalls.getSortedElements();
+			Map<String, Long> sortedElements = whoIsMakingTheCalls.getSortedElements();
 			sortedElements.keySet().stream().limit(20).forEach(k -> {
 				System.out.println(k + " #" + sortedElements.get(k));
 			});
+			Sortable<String> whatIsReflectedOn = new Sortable<>();
+			callSites.forEach((site, count) -> whatIsReflectedOn.add(site.getMember(), count));
+			System.out.println("Top 20 targets of reflection: ");
+			Map<String, Long> sortedTargets = whatIsReflectedOn.getSortedElements();
+			sortedTargets.keySet().stream().limit(20).forEach(k -> {
+				System.out.println(k + " #" + sortedTargets.get(k));
+			});
 		}
 	}
 	
+	private static boolean isIncluded(String typename) {
+		return !typename.contains("CGLIB") && !typename.contains("$$Lambda");
+	}
+
 	static class Sortable<T> {
 		List<Thing> things = new ArrayList<>();
 		class Thing {
 			private T o;
-			private int count;
-			Thing(T o) {
+			private long count;
+			Thing(T o, long count) {
 				this.o = o;
-				this.count = 1;
+				this.count = count;
 			}
 			@Override
 			public String toString() {
 				return "("+o+":"+count+")";
 			}
-			public void incCount() {
-				count++;
+			public void incCount(long increment) {
+				count += increment;
 			}
 			public boolean sameThing(T o2) {
 				return o.equals(o2);
 			}
 		}
-		public void add(T o) {
+		public void add(T o, long count) {
 			boolean found = false;
 			for (Thing thing: things) {
 				if (thing.sameThing(o)) {
 					// Already in there, inc count
-					thing.incCount();
+					thing.incCount(count);
 					found = true;
 					break;
 				}
 			}
 			if (!found) {
-				things.add(new Thing(o));
+				things.add(new Thing(o, count));
 			}
 		}
-		public Map<T,Integer> getSortedElements() {
+		public Map<T,Long> getSortedElements() {
 			Collections.sort(things, (a,b) -> {
-				return b.count - a.count;
+				return Long.compare(b.count, a.count);
 			});
-			Map<T,Integer> result = new LinkedHashMap<>();
+			Map<T,Long> result = new LinkedHashMap<>();
 			for (Thing thing: things) {
 				result.put(thing.o, thing.count);
 			}
@@ -228,8 +262,8 @@ public class RI {
 //	}
 
 	@SuppressWarnings("rawtypes")
-	private static void record(ReflectiveCall type, Object... objs) {
-		List<Info> existing = reflectionInvokers.get(type);
+	static void record(ReflectiveCall type, Object... objs) {
+		StackTraceElement[] whyStack = null;
 		try {
 			Class c = null;
 			if (objs[0] instanceof Method) {
@@ -247,6 +281,7 @@ public class RI {
 			}
 			if (Configuration.whyType != null && (Configuration.whyType.equals("*") || Configuration.whyType.equals(c.getName()))) {
 				StackTraceElement[] stes = Thread.currentThread().getStackTrace();
+				whyStack = stes;
 				StringBuilder s = new StringBuilder();
 				s.append("================================\n");
 				s.append("This stack is why type " + c + " is recorded:\n");
@@ -267,31 +302,24 @@ public class RI {
 				System.out.println(s.toString());
 			}
 			String n = c.getName();
-			Integer i = reflectedClasses.get(n);
-			if (i == null) {
-				reflectedClasses.put(n, 1);
-			} else {
-				reflectedClasses.put(n, i + 1);
+			// computeIfAbsent locks the bin even when the key is present, look up first
+			LongAdder count = reflectedClasses.get(n);
+			if (count == null) {
+				count = reflectedClasses.computeIfAbsent(n, (k) -> new LongAdder());
+			}
+			count.increment();
+			if (Configuration.precise) {
+				reflectedMembers.record(type, objs);
 			}
 		} catch (Throwable e) {
 			e.printStackTrace();
 		}
-		int traceLevel = 3;
-		StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-		StackTraceElement ste = stackTrace[traceLevel];
-		while (ste.getClassName().contains("AnnotatedElementUtils")) {
-			ste = stackTrace[++traceLevel];
-		}
-		String clazzName = ste.getClassName();
-		if (clazzName.equals("org.springframework.boot.agent.reflectionrecorder.RI")) {
+		// The stack taken for whyType has the caller too
+		StackTraceElement ste = (whyStack != null) ? CallerCapture.findCaller(whyStack) : callerCapture.capture(type);
+		if (ste == null) {
 			return;
 		}
-		String methodName = ste.getMethodName() + ":" + ste.getLineNumber();
-		if (existing == null) {
-			existing = new ArrayList<>();
-			reflectionInvokers.put(type, existing);
-		}
-		existing.add(new Info(objs, clazzName, methodName));
+		callSites.record(type, ste, objs);
 		id.ping();
 	}
 
@@ -678,52 +706,68 @@ public class RI {
 		return field.getLong(target);
 	}
 
-//	public static void jlrFieldSet(Field field, Object target, Object value) throws IllegalAccessException {
-//			field = asSetableField(field, target, valueType(value), value, true);
-//			field.set(target, value);
-//	}
-//
-//	public static void jlrFieldSetInt(Field field, Object target, int value) throws IllegalAccessException {
-//			field = asSetableField(field, target, int.class, value, true);
-//			field.setInt(target, value);
-//	}
-//
-//	public static void jlrFieldSetByte(Field field, Object target, byte value) throws IllegalAccessException {
-//		record(ReflectiveCall.FIELD_SETBYTE, field, target, value);
-//		field = asSetableField(field, target, byte.class, value, true);
-//		field.setByte(target, value);
-//	}
-//
-//	public static void jlrFieldSetChar(Field field, Object target, char value) throws IllegalAccessException {
-//		record(ReflectiveCall.FIELD_SETCHAR, field, target, value);
-//		field = asSetableField(field, target, char.class, value, true);
-//		field.setChar(target, value);
-//	}
-//
-//	public static void jlrFieldSetShort(Field field, Object target, short value) throws IllegalAccessException {
-//			field = asSetableField(field, target, short.class, value, true);
-//			field.setShort(target, value);
-//	}
-//
-//	public static void jlrFieldSetDouble(Field field, Object target, double value) throws IllegalAccessException {
-//			field = asSetableField(field, target, double.class, value, true);
-//			field.setDouble(target, value);
-//	}
-//
-//	public static void jlrFieldSetFloat(Field field, Object target, float value) throws IllegalAccessException {
-//			field = asSetableField(field, target, float.class, value, true);
-//			field.setFloat(target, value);
-//	}
-//
-//	public static void jlrFieldSetLong(Field field, Object target, long value) throws IllegalAccessException {
-//			field = asSetableField(field, target, long.class, value, true);
-//			field.setLong(target, value);
-//	}
-//
-//	public static void jlrFieldSetBoolean(Field field, Object target, boolean value) throws IllegalAccessException {
-//			field = asSetableField(field, target, boolean.class, value, true);
-//			field.setBoolean(target, value);
-//	}
+	public static void jlrFieldSet(Field field, Object target, Object value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SET, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.set(target, value);
+	}
+
+	public static void jlrFieldSetInt(Field field, Object target, int value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETINT, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setInt(target, value);
+	}
+
+	public static void jlrFieldSetByte(Field field, Object target, byte value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETBYTE, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setByte(target, value);
+	}
+
+	public static void jlrFieldSetChar(Field field, Object target, char value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETCHAR, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setChar(target, value);
+	}
+
+	public static void jlrFieldSetShort(Field field, Object target, short value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETSHORT, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setShort(target, value);
+	}
+
+	public static void jlrFieldSetDouble(Field field, Object target, double value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETDOUBLE, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setDouble(target, value);
+	}
+
+	public static void jlrFieldSetFloat(Field field, Object target, float value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETFLOAT, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setFloat(target, value);
+	}
+
+	public static void jlrFieldSetLong(Field field, Object target, long value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETLONG, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setLong(target, value);
+	}
+
+	public static void jlrFieldSetBoolean(Field field, Object target, boolean value) throws IllegalAccessException {
+		record(ReflectiveCall.FIELD_SETBOOLEAN, field, target, value);
+		checkWritable(field);
+		field = asAccessibleField(field, target, true);
+		field.setBoolean(target, value);
+	}
 
 //	private static Method asAccessibleMethod(ReloadableType methodDeclaringTypeReloadableType, Method method,
 //			Object target,
@@ -779,6 +823,16 @@ public class RI {
 	 * Warning this method is sensitive to stack depth! Should expect to be called
 	 * DIRECTLY from a jlr redirection method only!
 	 */
+	/**
+	 * The accessible copy made for the write must not let a final field be set that the
+	 * caller could not set directly.
+	 */
+	private static void checkWritable(Field field) throws IllegalAccessException {
+		if (Modifier.isFinal(field.getModifiers()) && !field.isAccessible()) {
+			throw new IllegalAccessException("Can not set final field " + field);
+		}
+	}
+
 	private static Field asAccessibleField(Field field, Object target, boolean makeAccessibleCopy)
 			throws IllegalAccessException {
 		Class<?> clazz = field.getDeclaringClass();
@@ -840,29 +894,4 @@ public class RI {
 		classes.add(slashedClassName);
 	}
 
-	static class Info {
-
-		public Info(Object[] objs, String object, String object2) {
-			this.os = objs;
-			this.callingClass = object;
-			this.callingMethod = object2;
-		}
-
-		Object[] os;
-
-		String callingClass;
-
-		String callingMethod;
-
-		@Override
-		public String toString() {
-			StringBuilder sb = new StringBuilder();
-			sb.append(callingClass).append(".").append(callingMethod).append(": ");
-			for (Object o : os) {
-				sb.append(o).append(" ");
-			}
-			return sb.toString().trim();
-		}
-	}
-
 }
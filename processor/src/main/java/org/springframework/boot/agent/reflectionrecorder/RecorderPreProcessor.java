@@ -16,11 +16,21 @@
 package org.springframework.boot.agent.reflectionrecorder;
 
 import java.security.ProtectionDomain;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.objectweb.asm.ClassReader;
 
 public class RecorderPreProcessor {
 
+	// Classes are loaded from many threads, these are only summed for the statistics
+	private static final LongAdder scanned = new LongAdder();
+
+	private static final LongAdder rewritten = new LongAdder();
+
+	private static final LongAdder scanNanos = new LongAdder();
+
+	private static final LongAdder rewriteNanos = new LongAdder();
+
 	public void initialize() {
 		Configuration.init();
 	}
@@ -42,23 +52,54 @@ public class RecorderPreProcessor {
 			return bytes;
 		}
 		Object[] data =  rewrite(bytes);
-		if (Configuration.verboseMode) {
+		if (Configuration.verboseMode && data[0] != bytes) {
 			System.out.println("Rewrote "+data[1]);
 		}
 		return (byte[])data[0];
 	}
 	
+	/**
+	 * @param bytes the class bytes
+	 * @return the rewritten bytes and the class name, the bytes passed in are returned
+	 * when the class makes no reflective calls that are intercepted
+	 */
 	public static Object[] rewrite(byte[] bytes) {
+		long start = System.nanoTime();
 		ClassReader fileReader = new ClassReader(bytes);
-		RewriteReflectionAdaptor classAdaptor = new RewriteReflectionAdaptor();
+		boolean rewrite = RewriteReflectionAdaptor.callsInterceptableMethod(fileReader);
+		long scanEnd = System.nanoTime();
+		scanned.increment();
+		scanNanos.add(scanEnd - start);
+		if (!rewrite) {
+			return new Object[] {bytes,fileReader.getClassName()};
+		}
+		RewriteReflectionAdaptor classAdaptor = new RewriteReflectionAdaptor(fileReader);
 		try {
 			fileReader.accept(classAdaptor, 0);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			return new Object[] {bytes,classAdaptor.name};
 		}
+		if (!classAdaptor.rewroteReflection) {
+			// The constant pool named an intercepted method that no instruction calls
+			return new Object[] {bytes,classAdaptor.name};
+		}
 		byte[] bs = classAdaptor.getBytes();
+		rewritten.increment();
+		rewriteNanos.add(System.nanoTime() - scanEnd);
 		return new Object[] {bs,classAdaptor.name};
 	}
+
+	static long getRewrittenCount() {
+		return rewritten.sum();
+	}
+
+	/**
+	 * @return how many classes were scanned and rewritten, and the time spent on each
+	 */
+	public static String getStatistics() {
+		return String.format("scanned %d classes in %dms, rewrote %d in %dms", scanned.sum(),
+				scanNanos.sum() / 1000000, rewritten.sum(), rewriteNanos.sum() / 1000000);
+	}
 	
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+import org.springframework.boot.graal.reflectconfig.FieldDescriptor;
+import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
+
+/**
+ * Collects the members the intercepted reflective calls actually touch, for the
+ * {@code precise} dump mode. A call on a {@link Method}, {@link Constructor} or
+ * {@link Field} registers that member on its declaring class, a lookup by name registers
+ * the member found and only the bulk lookups ({@code getDeclaredMethods()} and friends)
+ * set flags. Annotation queries on a class register the class alone.
+ *
+ * @author Andy Clement
+ */
+class ReflectedMembers {
+
+	private final Map<String, ClassDescriptor> descriptors = new ConcurrentHashMap<>();
+
+	/**
+	 * Record what a call needs registered.
+	 * @param type the kind of call
+	 * @param arguments the arguments of the call, the reflected type or member first
+	 */
+	void record(ReflectiveCall type, Object[] arguments) {
+		Object target = arguments[0];
+		if (target instanceof Method) {
+			Method method = (Method) target;
+			addMethod(method.getDeclaringClass(), method.getName(), method.getParameterTypes());
+		}
+		else if (target instanceof Constructor) {
+			Constructor<?> constructor = (Constructor<?>) target;
+			addMethod(constructor.getDeclaringClass(), MethodDescriptor.CONSTRUCTOR_NAME,
+					constructor.getParameterTypes());
+		}
+		else if (target instanceof Field) {
+			Field field = (Field) target;
+			addField(field.getDeclaringClass(), field.getName(), type.name().startsWith("FIELD_SET"));
+		}
+		else if (target instanceof Annotation) {
+			get(((Annotation) target).annotationType());
+		}
+		else if (target instanceof Class) {
+			record(type, (Class<?>) target, arguments);
+		}
+	}
+
+	private void record(ReflectiveCall type, Class<?> clazz, Object[] arguments) {
+		switch (type) {
+		case CLASS_GETDECLAREDETHODS:
+			setFlag(clazz, Flag.allDeclaredMethods);
+			break;
+		case CLASS_GETMETHODS:
+			setFlag(clazz, Flag.allPublicMethods);
+			break;
+		case CLASS_GETDECLAREDCONSTRUCTORS:
+			setFlag(clazz, Flag.allDeclaredConstructors);
+			break;
+		case CLASS_GETCONSTRUCTORS:
+			setFlag(clazz, Flag.allPublicConstructors);
+			break;
+		case CLASS_GETDECLAREDFIELDS:
+			setFlag(clazz, Flag.allDeclaredFields);
+			break;
+		case CLASS_GETFIELDS:
+			setFlag(clazz, Flag.allPublicFields);
+			break;
+		case CLASS_GETDECLAREDMETHOD:
+		case CLASS_GETMETHOD:
+		case CLASS_GETDECLAREDCONSTRUCTOR:
+		case CLASS_GETCONSTRUCTOR:
+		case CLASS_GETDECLAREDFIELD:
+		case CLASS_GETFIELD:
+			// Register what the lookup finds: getMethod and getField may find an inherited
+			// member and a lookup that fails registers nothing
+			Object member = find(type, clazz, arguments);
+			if (member != null) {
+				record(type, new Object[] { member });
+			}
+			else {
+				get(clazz);
+			}
+			break;
+		case CLASS_NEWINSTANCE:
+			addMethod(clazz, MethodDescriptor.CONSTRUCTOR_NAME, new Class<?>[0]);
+			break;
+		default:
+			get(clazz);
+		}
+	}
+
+	private static Object find(ReflectiveCall type, Class<?> clazz, Object[] arguments) {
+		try {
+			switch (type) {
+			case CLASS_GETDECLAREDMETHOD:
+				return clazz.getDeclaredMethod((String) arguments[1], (Class<?>[]) arguments[2]);
+			case CLASS_GETMETHOD:
+				return clazz.getMethod((String) arguments[1], (Class<?>[]) arguments[2]);
+			case CLASS_GETDECLAREDCONSTRUCTOR:
+				return clazz.getDeclaredConstructor((Class<?>[]) arguments[1]);
+			case CLASS_GETCONSTRUCTOR:
+				return clazz.getConstructor((Class<?>[]) arguments[1]);
+			case CLASS_GETDECLAREDFIELD:
+				return clazz.getDeclaredField((String) arguments[1]);
+			default:
+				return clazz.getField((String) arguments[1]);
+			}
+		}
+		catch (ReflectiveOperationException | RuntimeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Pass a copy of each recorded class to the consumer.
+	 * @param consumer the consumer
+	 */
+	void forEach(Consumer<ClassDescriptor> consumer) {
+		for (ClassDescriptor cd : this.descriptors.values()) {
+			ClassDescriptor copy;
+			synchronized (cd) {
+				copy = cd.copy();
+			}
+			consumer.accept(copy);
+		}
+	}
+
+	void clear() {
+		this.descriptors.clear();
+	}
+
+	private ClassDescriptor get(Class<?> clazz) {
+		String name = clazz.getName();
+		// computeIfAbsent locks the bin even when the key is present, look up first
+		ClassDescriptor cd = this.descriptors.get(name);
+		if (cd == null) {
+			cd = this.descriptors.computeIfAbsent(name, ClassDescriptor::of);
+		}
+		return cd;
+	}
+
+	private void setFlag(Class<?> clazz, Flag flag) {
+		ClassDescriptor cd = get(clazz);
+		synchronized (cd) {
+			cd.setFlag(flag);
+		}
+	}
+
+	private void addMethod(Class<?> clazz, String name, Class<?>[] parameterTypes) {
+		String[] parameterTypeNames = new String[(parameterTypes != null) ? parameterTypes.length : 0];
+		for (int i = 0; i < parameterTypeNames.length; i++) {
+			// getTypeName() gives arrays as reflect.json has them, e.g. java.lang.String[]
+			parameterTypeNames[i] = parameterTypes[i].getTypeName();
+		}
+		MethodDescriptor md = MethodDescriptor.of(name, parameterTypeNames);
+		ClassDescriptor cd = get(clazz);
+		synchronized (cd) {
+			cd.addMethodDescriptor(md);
+		}
+	}
+
+	private void addField(Class<?> clazz, String name, boolean allowWrite) {
+		ClassDescriptor cd = get(clazz);
+		synchronized (cd) {
+			cd.addFieldDescriptor(FieldDescriptor.of(name, allowWrite));
+		}
+	}
+
+}
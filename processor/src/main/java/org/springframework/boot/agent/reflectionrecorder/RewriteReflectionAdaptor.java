@@ -16,7 +16,9 @@
 package org.springframework.boot.agent.reflectionrecorder;
 
 import java.util.HashSet;
+import java.util.Set;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
@@ -27,10 +29,17 @@ public class RewriteReflectionAdaptor extends ClassVisitor implements Opcodes {
 
 	private static final HashSet<String> intercept = new HashSet<String>();
 
+	private static final int CONSTANT_METHODREF = 10;
+
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+
 	public boolean rewroteReflection = false;
 
 	private ClassVisitor cw;
 
+	// Methods to rewrite as name+descriptor, null to rewrite them all
+	private Set<String> methodsToRewrite;
+
 	public String name;
 
 	static {
@@ -74,15 +83,15 @@ public class RewriteReflectionAdaptor extends ClassVisitor implements Opcodes {
 		intercept("java/lang/reflect/Field", "getFloat");
 		intercept("java/lang/reflect/Field", "getDouble");
 		
-		// interceptable("java/lang/reflect/Field", "set");
-		// interceptable("java/lang/reflect/Field", "setBoolean");
-		// interceptable("java/lang/reflect/Field", "setByte");
-		// interceptable("java/lang/reflect/Field", "setChar");
-		// interceptable("java/lang/reflect/Field", "setDouble");
-		// interceptable("java/lang/reflect/Field", "setFloat");
-		// interceptable("java/lang/reflect/Field", "setInt");
-		// interceptable("java/lang/reflect/Field", "setLong");
-		// interceptable("java/lang/reflect/Field", "setShort");
+		intercept("java/lang/reflect/Field", "set");
+		intercept("java/lang/reflect/Field", "setBoolean");
+		intercept("java/lang/reflect/Field", "setByte");
+		intercept("java/lang/reflect/Field", "setChar");
+		intercept("java/lang/reflect/Field", "setDouble");
+		intercept("java/lang/reflect/Field", "setFloat");
+		intercept("java/lang/reflect/Field", "setInt");
+		intercept("java/lang/reflect/Field", "setLong");
+		intercept("java/lang/reflect/Field", "setShort");
 		
 		// interceptable("java/lang/Class", "getAnnotation");
 		// interceptable("java/lang/Class", "getAnnotations");
@@ -131,6 +140,40 @@ public class RewriteReflectionAdaptor extends ClassVisitor implements Opcodes {
 		return intercept.contains(owner + "." + methodName);
 	}
 
+	/**
+	 * Look through the constant pool for calls to interceptable methods, much cheaper than
+	 * visiting the code of every method.
+	 *
+	 * @param reader the reader for the class
+	 * @return true if the class refers to a method that is intercepted
+	 */
+	static boolean callsInterceptableMethod(ClassReader reader) {
+		char[] buffer = null;
+		for (int i = 1, max = reader.getItemCount(); i < max; i++) {
+			int offset = reader.getItem(i);
+			// The entry after a long or double has no offset
+			if (offset == 0) {
+				continue;
+			}
+			int tag = reader.readByte(offset - 1);
+			if (tag != CONSTANT_METHODREF && tag != CONSTANT_INTERFACE_METHODREF) {
+				continue;
+			}
+			if (buffer == null) {
+				buffer = new char[reader.getMaxStringLength()];
+			}
+			String owner = reader.readClass(offset, buffer);
+			if (owner.startsWith("java/lang/reflect/") || owner.equals("java/lang/Class")) {
+				// The name is the first entry of the NameAndType
+				String methodName = reader.readUTF8(reader.getItem(reader.readUnsignedShort(offset + 2)), buffer);
+				if (isInterceptable(owner, methodName)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	public RewriteReflectionAdaptor(ClassVisitor classWriter) {
 		super(ASM6, classWriter);
 		cw = cv;
@@ -140,6 +183,38 @@ public class RewriteReflectionAdaptor extends ClassVisitor implements Opcodes {
 		this(new ClassWriter(ClassWriter.COMPUTE_MAXS));
 	}
 
+	/**
+	 * Rewrite the class read by the reader, methods without interceptable calls are copied
+	 * as they are rather than rebuilt. The interceptors take the receiver as their first
+	 * parameter so the stack sizes do not change and need not be computed.
+	 *
+	 * @param reader the reader for the class, that will be passed this adaptor
+	 */
+	public RewriteReflectionAdaptor(ClassReader reader) {
+		this(new ClassWriter(reader, 0));
+		this.methodsToRewrite = findMethodsToRewrite(reader);
+	}
+
+	private static Set<String> findMethodsToRewrite(ClassReader reader) {
+		Set<String> methods = new HashSet<>();
+		reader.accept(new ClassVisitor(ASM6) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+					String[] exceptions) {
+				return new MethodVisitor(ASM6) {
+					@Override
+					public void visitMethodInsn(int opcode, String owner, String methodName, String methodDescriptor,
+							boolean itf) {
+						if (isInterceptable(owner, methodName)) {
+							methods.add(name + descriptor);
+						}
+					}
+				};
+			}
+		}, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return methods;
+	}
+
 	public byte[] getBytes() {
 		byte[] bytes = ((ClassWriter) cw).toByteArray();
 		return bytes;
@@ -164,6 +239,10 @@ public class RewriteReflectionAdaptor extends ClassVisitor implements Opcodes {
 	@Override
 	public MethodVisitor visitMethod(int flags, String name, String descriptor, String signature, String[] exceptions) {
 		MethodVisitor mv = super.visitMethod(flags, name, descriptor, signature, exceptions);
+		if (methodsToRewrite != null && !methodsToRewrite.contains(name + descriptor)) {
+			// Handing back the writer's own visitor lets it copy the method verbatim
+			return mv;
+		}
 		return new RewritingMethodAdapter(mv, name);
 	}
 
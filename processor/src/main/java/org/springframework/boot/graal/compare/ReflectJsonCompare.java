@@ -22,11 +22,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
-import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
+import org.springframework.boot.graal.reflectconfig.ReflectConfigConverter;
 import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
 
 /**
- * Compare two json files (in graal reflect format) and produce a simple diff.
+ * Compare two json files (in graal reflect format, or the binary form of it) and produce a
+ * simple diff.
  * 
  * @author Andy Clement
  */
@@ -63,14 +64,7 @@ public class ReflectJsonCompare {
 		List<ClassDescriptor> inAandB = new ArrayList<>();
 		
 		for (ClassDescriptor cda: descriptorA.getClassDescriptors()) {
-			boolean isInB = false;
-			for (ClassDescriptor cdb: descriptorB.getClassDescriptors()) {
-				if (cda.getName().equals(cdb.getName())) {
-					isInB = true;
-					break;
-				}
-			}
-			if (isInB) {
+			if (descriptorB.hasClassDescriptor(cda.getName())) {
 				inAandB.add(cda);
 			} else {
 				inAbutNotInB.add(cda);
@@ -78,14 +72,7 @@ public class ReflectJsonCompare {
 		}
 
 		for (ClassDescriptor cdb: descriptorB.getClassDescriptors()) {
-			boolean isInA = false;
-			for (ClassDescriptor cda: descriptorA.getClassDescriptors()) {
-				if (cdb.getName().equals(cda.getName())) {
-					isInA = true;
-					break;
-				}
-			}
-			if (!isInA) {
+			if (!descriptorA.hasClassDescriptor(cdb.getName())) {
 				inBbutNotInA.add(cdb);
 			}
 		}
@@ -169,7 +156,7 @@ public class ReflectJsonCompare {
 			System.exit(0);
 		}
 		try (InputStream is = new FileInputStream(f)) {
-			ReflectionDescriptor rd = JsonMarshaller.read(is);
+			ReflectionDescriptor rd = ReflectConfigConverter.read(is);
 			return rd;
 		} catch (Exception e) {
 			throw new IllegalStateException(e);
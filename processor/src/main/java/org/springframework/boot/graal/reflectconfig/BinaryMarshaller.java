@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Marshaller to write {@link ReflectionDescriptor} in a compact binary form that is much
+ * quicker to load than JSON. Layout, all numbers being unsigned varints:
+ * <ul>
+ * <li>the magic bytes {@code GRFL} and the format version</li>
+ * <li>a string table: count, then each string as UTF-8 byte length and bytes. Every
+ * class, member and parameter type name is stored once and referred to by index</li>
+ * <li>the class count, then for each class its name index, its flags as a bitmask of
+ * {@link Flag} ordinals, its fields and its methods</li>
+ * <li>member lists are prefixed with their length plus one, zero meaning no list at
+ * all; a field is {@code nameIndex << 1 | allowWrite}, a method is its name index
+ * followed by its parameter type list</li>
+ * </ul>
+ *
+ * @author Andy Clement
+ */
+public class BinaryMarshaller {
+
+	private static final byte[] MAGIC = { 'G', 'R', 'F', 'L' };
+
+	private static final int VERSION = 1;
+
+	/**
+	 * No name in a class file can be longer, anything beyond is corrupt data.
+	 */
+	private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+	/**
+	 * Lists are allocated no bigger than this up front, corrupt data must not be able to
+	 * claim huge counts and exhaust the heap before it runs out.
+	 */
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	public void write(ReflectionDescriptor metadata, OutputStream outputStream) throws IOException {
+		Map<String, Integer> strings = new HashMap<>();
+		List<String> table = new ArrayList<>();
+		for (ClassDescriptor cd : metadata.getClassDescriptors()) {
+			intern(cd.getName(), strings, table);
+			if (cd.getFields() != null) {
+				for (FieldDescriptor fd : cd.getFields()) {
+					intern(fd.getName(), strings, table);
+				}
+			}
+			if (cd.getMethods() != null) {
+				for (MethodDescriptor md : cd.getMethods()) {
+					intern(md.getName(), strings, table);
+					if (md.getParameterTypes() != null) {
+						for (String parameterType : md.getParameterTypes()) {
+							intern(parameterType, strings, table);
+						}
+					}
+				}
+			}
+		}
+		OutputStream out = new BufferedOutputStream(outputStream);
+		out.write(MAGIC);
+		writeVarint(out, VERSION);
+		writeVarint(out, table.size());
+		for (String string : table) {
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			writeVarint(out, bytes.length);
+			out.write(bytes);
+		}
+		writeVarint(out, metadata.getClassDescriptors().size());
+		for (ClassDescriptor cd : metadata.getClassDescriptors()) {
+			writeVarint(out, strings.get(cd.getName()));
+			writeVarint(out, cd.getFlagBits());
+			List<FieldDescriptor> fields = cd.getFields();
+			writeVarint(out, (fields != null) ? fields.size() + 1 : 0);
+			if (fields != null) {
+				for (FieldDescriptor fd : fields) {
+					writeVarint(out, strings.get(fd.getName()) << 1 | (fd.isAllowWrite() ? 1 : 0));
+				}
+			}
+			List<MethodDescriptor> methods = cd.getMethods();
+			writeVarint(out, (methods != null) ? methods.size() + 1 : 0);
+			if (methods != null) {
+				for (MethodDescriptor md : methods) {
+					writeVarint(out, strings.get(md.getName()));
+					List<String> parameterTypes = md.getParameterTypes();
+					writeVarint(out, (parameterTypes != null) ? parameterTypes.size() + 1 : 0);
+					if (parameterTypes != null) {
+						for (String parameterType : parameterTypes) {
+							writeVarint(out, strings.get(parameterType));
+						}
+					}
+				}
+			}
+		}
+		out.flush();
+	}
+
+	public static ReflectionDescriptor read(InputStream inputStream) throws IOException {
+		InputStream in = new BufferedInputStream(inputStream);
+		for (byte b : MAGIC) {
+			if (in.read() != b) {
+				throw new IOException("Not binary reflection metadata");
+			}
+		}
+		int version = readVarint(in);
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary reflection metadata version " + version);
+		}
+		int stringCount = readLength(in);
+		List<String> table = new ArrayList<>(Math.min(stringCount, MAX_INITIAL_CAPACITY));
+		byte[] buffer = new byte[256];
+		for (int i = 0; i < stringCount; i++) {
+			int length = readLength(in);
+			if (length > MAX_STRING_LENGTH) {
+				throw new IOException("Malformed string length " + length + " in binary reflection metadata");
+			}
+			if (length > buffer.length) {
+				buffer = new byte[length];
+			}
+			readFully(in, buffer, length);
+			table.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+		}
+		ReflectionDescriptor rd = new ReflectionDescriptor();
+		int classCount = readLength(in);
+		for (int c = 0; c < classCount; c++) {
+			ClassDescriptor cd = ClassDescriptor.of(readString(in, table));
+			cd.setFlagBits(readVarint(in));
+			int fieldCount = readLength(in) - 1;
+			for (int f = 0; f < fieldCount; f++) {
+				int field = readVarint(in);
+				cd.addFieldDescriptor(new FieldDescriptor(lookup(table, field >>> 1), (field & 1) != 0));
+			}
+			int methodCount = readLength(in) - 1;
+			for (int m = 0; m < methodCount; m++) {
+				String name = readString(in, table);
+				int parameterCount = readLength(in) - 1;
+				List<String> parameterTypes = null;
+				if (parameterCount >= 0) {
+					parameterTypes = new ArrayList<>(Math.min(parameterCount, MAX_INITIAL_CAPACITY));
+					for (int p = 0; p < parameterCount; p++) {
+						parameterTypes.add(readString(in, table));
+					}
+				}
+				cd.addMethodDescriptor(new MethodDescriptor(name, parameterTypes));
+			}
+			rd.add(cd);
+		}
+		return rd;
+	}
+
+	/**
+	 * Check whether a stream holds binary reflection metadata, without consuming it.
+	 * @param inputStream a stream that supports {@link InputStream#mark mark}
+	 * @return {@code true} if the stream starts with the binary format magic bytes
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static boolean isBinary(InputStream inputStream) throws IOException {
+		inputStream.mark(MAGIC.length);
+		try {
+			for (byte b : MAGIC) {
+				if (inputStream.read() != b) {
+					return false;
+				}
+			}
+			return true;
+		}
+		finally {
+			inputStream.reset();
+		}
+	}
+
+	private static void intern(String string, Map<String, Integer> strings, List<String> table) {
+		if (!strings.containsKey(string)) {
+			strings.put(string, table.size());
+			table.add(string);
+		}
+	}
+
+	private static void writeVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Truncated binary reflection metadata");
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint in binary reflection metadata");
+	}
+
+	private static int readLength(InputStream in) throws IOException {
+		int length = readVarint(in);
+		if (length < 0) {
+			throw new IOException("Malformed length in binary reflection metadata");
+		}
+		return length;
+	}
+
+	private static String readString(InputStream in, List<String> table) throws IOException {
+		return lookup(table, readVarint(in));
+	}
+
+	private static String lookup(List<String> table, int index) throws IOException {
+		if (index < 0 || index >= table.size()) {
+			throw new IOException("Malformed string index " + index + " in binary reflection metadata, the table has "
+					+ table.size() + " entries");
+		}
+		return table.get(index);
+	}
+
+	private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int count = in.read(buffer, read, length - read);
+			if (count == -1) {
+				throw new EOFException("Truncated binary reflection metadata");
+			}
+			read += count;
+		}
+	}
+
+}
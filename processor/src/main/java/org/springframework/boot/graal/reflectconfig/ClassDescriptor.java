@@ -16,10 +16,15 @@
 
 package org.springframework.boot.graal.reflectconfig;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Reflection information about a single class.
@@ -35,7 +40,12 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 
 	private List<MethodDescriptor> methods; // includes constructors "<init>"
 
-	private Set<Flag> flags; // Inclusion in list indicates they are set
+	// Lookup indexes over fields and methods, the lists keep the insertion order
+	private Map<String, FieldDescriptor> fieldsByName;
+
+	private Map<String, List<MethodDescriptor>> methodsByName; // overloads share an entry
+
+	private int flags; // Bit per Flag, see Flag.mask()
 
 	public enum Flag {
 		allDeclaredConstructors, //
@@ -43,17 +53,50 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 		allDeclaredMethods, //
 		allPublicMethods, //
 		allDeclaredClasses, //
-		allPublicClasses;
+		allPublicClasses, //
+		allDeclaredFields, //
+		allPublicFields;
+
+		static final Flag[] VALUES = values();
+
+		static final int ALL = (1 << VALUES.length) - 1;
+
+		private final String jsonKey = name();
+
+		private final int mask = 1 << ordinal();
+
+		/**
+		 * @return the key this flag is written under in reflect.json
+		 */
+		public String getJsonKey() {
+			return this.jsonKey;
+		}
+
+		int mask() {
+			return this.mask;
+		}
 	}
 
 	ClassDescriptor() {
 	}
 
 	ClassDescriptor(String name, List<FieldDescriptor> fields, List<MethodDescriptor> methods, Set<Flag> flags) {
-		this.name = name;
-		this.fields = fields;
-		this.methods = methods;
-		this.flags = flags;
+		this.name = TypeNamePool.get().name(name);
+		if (flags != null) {
+			for (Flag flag : flags) {
+				setFlag(flag);
+			}
+		}
+		if (fields != null) {
+			for (FieldDescriptor fd : fields) {
+				addFieldDescriptor(fd);
+			}
+		}
+		if (methods != null) {
+			for (MethodDescriptor md : methods) {
+				addMethodDescriptor(md);
+			}
+		}
 	}
 
 	public String getName() {
@@ -61,7 +104,7 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 	}
 
 	public void setName(String name) {
-		this.name = name;
+		this.name = TypeNamePool.get().name(name);
 	}
 
 	@Override
@@ -75,7 +118,7 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 		ClassDescriptor other = (ClassDescriptor) o;
 		boolean result = true;
 		result = result && nullSafeEquals(this.name, other.name);
-		result = result && nullSafeEquals(this.flags, other.flags);
+		result = result && this.flags == other.flags;
 		result = result && nullSafeEquals(this.fields, other.fields);
 		result = result && nullSafeEquals(this.methods, other.methods);
 		return result;
@@ -84,7 +127,7 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 	@Override
 	public int hashCode() {
 		int result = nullSafeHashCode(this.name);
-		result = 31 * result + nullSafeHashCode(this.flags);
+		result = 31 * result + this.flags;
 		result = 31 * result + nullSafeHashCode(this.fields);
 		result = 31 * result + nullSafeHashCode(this.methods);
 		return result;
@@ -107,7 +150,7 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 	@Override
 	public String toString() {
 		StringBuilder string = new StringBuilder(this.name);
-		buildToStringProperty(string, "setFlags", this.flags);
+		buildToStringProperty(string, "setFlags", getFlags());
 		buildToStringProperty(string, "fields", this.fields);
 		buildToStringProperty(string, "methods", this.methods);
 		return string.toString();
@@ -124,16 +167,37 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 		return getName().compareTo(o.getName());
 	}
 
+	/**
+	 * @return a read only view of the flags that are set, null if none are
+	 */
 	public Set<Flag> getFlags() {
+		return this.flags == 0 ? null : new FlagSet();
+	}
+
+	public boolean hasFlag(Flag f) {
+		return (this.flags & f.mask()) != 0;
+	}
+
+	int getFlagBits() {
 		return this.flags;
 	}
 
+	void setFlagBits(int flags) {
+		this.flags = flags & Flag.ALL;
+	}
+
+	/**
+	 * @return the fields in the order they were added, null if there are none
+	 */
 	public List<FieldDescriptor> getFields() {
-		return this.fields;
+		return this.fields == null ? null : Collections.unmodifiableList(this.fields);
 	}
 
+	/**
+	 * @return the methods and constructors in the order they were added, null if there are none
+	 */
 	public List<MethodDescriptor> getMethods() {
-		return this.methods;
+		return this.methods == null ? null : Collections.unmodifiableList(this.methods);
 	}
 	
 	public static ClassDescriptor of(String name) {
@@ -141,6 +205,25 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 		cd.setName(name);
 		return cd;
 	}
+
+	/**
+	 * @return a deep copy of this descriptor, later changes to either are not seen by the other
+	 */
+	public ClassDescriptor copy() {
+		ClassDescriptor cd = ClassDescriptor.of(this.name);
+		cd.flags = this.flags;
+		if (this.fields != null) {
+			for (FieldDescriptor fd : this.fields) {
+				cd.addFieldDescriptor(new FieldDescriptor(fd.getName(), fd.isAllowWrite()));
+			}
+		}
+		if (this.methods != null) {
+			for (MethodDescriptor md : this.methods) {
+				cd.addMethodDescriptor(new MethodDescriptor(md.getName(), md.getParameterTypes()));
+			}
+		}
+		return cd;
+	}
 	
 //	public static ClassDescriptor newGroup(String name, String type, String sourceType,
 //			String sourceMethod) {
@@ -161,70 +244,140 @@ public final class ClassDescriptor implements Comparable<ClassDescriptor> {
 //	}
 
 	public void setFlag(Flag f) {
-		if (flags == null) {
-			flags = new TreeSet<>();
-		}
-		flags.add(f);
+		flags |= f.mask();
 	}
 
+	/**
+	 * Add a method, unless one with the same name and parameter types is already present.
+	 * Members are indexed when added, they should not be renamed afterwards.
+	 * 
+	 * @param methodDescriptor the method to add
+	 */
 	public void addMethodDescriptor(MethodDescriptor methodDescriptor) {
 		if (methods == null) {
 			methods = new ArrayList<>();
+			methodsByName = new HashMap<>();
+		}
+		List<MethodDescriptor> overloads = methodsByName.get(methodDescriptor.getName());
+		if (overloads == null) {
+			overloads = new ArrayList<>(1);
+			methodsByName.put(methodDescriptor.getName(), overloads);
 		}
+		else if (overloads.contains(methodDescriptor)) {
+			return;
+		}
+		overloads.add(methodDescriptor);
 		methods.add(methodDescriptor);
 	}
 
+	/**
+	 * Add a field, if one with the same name is already present it is made writable when
+	 * the new one is.
+	 * 
+	 * @param fieldDescriptor the field to add
+	 */
 	public void addFieldDescriptor(FieldDescriptor fieldDescriptor) {
 		if (fields == null) {
 			fields = new ArrayList<>();
+			fieldsByName = new HashMap<>();
+		}
+		FieldDescriptor existing = fieldsByName.putIfAbsent(fieldDescriptor.getName(), fieldDescriptor);
+		if (existing == null) {
+			fields.add(fieldDescriptor);
+		}
+		else if (fieldDescriptor.isAllowWrite()) {
+			existing.setAllowWrite(true);
 		}
-		fields.add(fieldDescriptor);
 	}
 
 	/**
 	 * Used when new data is to be added to an already existing class descriptor (additional members, flag settings).
+	 * Flags are combined, a field is writable if either says so and duplicate methods are dropped. Fields are
+	 * copied, so making one writable later does not affect the other descriptor.
 	 * 
 	 * @param cd the ClassDescriptor to merge into this one
 	 */
 	public void merge(ClassDescriptor cd) {
-		for (Flag flag : cd.getFlags()) {
-			this.setFlag(flag);
-		}
-		for (FieldDescriptor fd : cd.getFields()) {
-			FieldDescriptor existingSimilarOne = null;
-			for (FieldDescriptor existingFd: getFields()) {
-				if (existingFd.getName().equals(fd.getName())) {
-					existingSimilarOne = existingFd;
-					break;
-				}
-			}
-			if (existingSimilarOne != null) {
-				if (fd.isAllowWrite()) {
-					existingSimilarOne.setAllowWrite(true);
-				}
-			} else {
-				addFieldDescriptor(fd);
+		flags |= cd.flags;
+		if (cd.fields != null) {
+			for (FieldDescriptor fd : cd.fields) {
+				addFieldDescriptor(new FieldDescriptor(fd.getName(), fd.isAllowWrite()));
 			}
 		}
-		for (MethodDescriptor methodDescriptor : cd.getMethods()) {
-			if (!containsMethodDescriptor(methodDescriptor)) {
+		if (cd.methods != null) {
+			for (MethodDescriptor methodDescriptor : cd.methods) {
 				addMethodDescriptor(methodDescriptor);
 			}
 		}
 	}
 
-	private boolean containsMethodDescriptor(MethodDescriptor methodDescriptor) {
-		return methods.contains(methodDescriptor);
+	public FieldDescriptor getFieldDescriptor(String name) {
+		return fieldsByName == null ? null : fieldsByName.get(name);
 	}
 
-	public MethodDescriptor getMethodDescriptor(String name,String...parameterTypes) {
-		MethodDescriptor searchmd = MethodDescriptor.of(name, parameterTypes);
-		for (MethodDescriptor md: methods) {
-			if (md.equals(searchmd)) {
-				return md;
+	public MethodDescriptor getMethodDescriptor(String name, String... parameterTypes) {
+		List<MethodDescriptor> overloads = methodsByName == null ? null : methodsByName.get(name);
+		if (overloads != null) {
+			for (MethodDescriptor md : overloads) {
+				if (hasParameterTypes(md, parameterTypes)) {
+					return md;
+				}
 			}
 		}
 		return null;
 	}
 
+	private static boolean hasParameterTypes(MethodDescriptor md, String[] parameterTypes) {
+		List<String> mdParameterTypes = md.getParameterTypes();
+		int count = parameterTypes == null ? 0 : parameterTypes.length;
+		if (mdParameterTypes == null || mdParameterTypes.size() != count) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			if (!mdParameterTypes.get(i).equals(parameterTypes[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Live view over the flag bits, iterating in declaration order.
+	 */
+	private class FlagSet extends AbstractSet<Flag> {
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Flag && hasFlag((Flag) o);
+		}
+
+		@Override
+		public int size() {
+			return Integer.bitCount(flags);
+		}
+
+		@Override
+		public Iterator<Flag> iterator() {
+			return new Iterator<Flag>() {
+
+				private int remaining = flags;
+
+				@Override
+				public boolean hasNext() {
+					return this.remaining != 0;
+				}
+
+				@Override
+				public Flag next() {
+					if (this.remaining == 0) {
+						throw new NoSuchElementException();
+					}
+					int ordinal = Integer.numberOfTrailingZeros(this.remaining);
+					this.remaining &= this.remaining - 1;
+					return Flag.VALUES[ordinal];
+				}
+			};
+		}
+	}
+
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Removes entries from reflection configuration that other entries already cover, the
+ * result registers exactly what the input did:
+ * <ul>
+ * <li>classes listed more than once are merged into one</li>
+ * <li>{@code <init>} entries are dropped when {@code allDeclaredConstructors} is set</li>
+ * <li>{@code allPublicConstructors} is dropped when {@code allDeclaredConstructors} is
+ * set, constructors are not inherited so the public ones are a subset</li>
+ * <li>method entries are dropped when both {@code allDeclaredMethods} and
+ * {@code allPublicMethods} are set. {@code allDeclaredMethods} alone is not enough, an
+ * entry may name a method inherited from a superclass</li>
+ * <li>field entries are dropped when both {@code allDeclaredFields} and
+ * {@code allPublicFields} are set, for the same reason, unless they are
+ * {@code allowWrite}: the flags only give read access</li>
+ * </ul>
+ * The public variants of the method, field and class flags include inherited members,
+ * so they are never covered by the declared variants.
+ *
+ * @author Andy Clement
+ */
+public class ConfigurationMinimizer {
+
+	private static final int ALL_METHODS = Flag.allDeclaredMethods.mask() | Flag.allPublicMethods.mask();
+
+	private static final int ALL_FIELDS = Flag.allDeclaredFields.mask() | Flag.allPublicFields.mask();
+
+	private int removedClasses;
+
+	private int removedMembers;
+
+	private int removedFlags;
+
+	private final boolean measureBytes;
+
+	private long removedBytes = -1;
+
+	public ConfigurationMinimizer() {
+		this(false);
+	}
+
+	/**
+	 * Create a new minimizer.
+	 * @param measureBytes whether to measure how much smaller the JSON form gets, which
+	 * costs serializing the configuration twice
+	 */
+	public ConfigurationMinimizer(boolean measureBytes) {
+		this.measureBytes = measureBytes;
+	}
+
+	/**
+	 * @param metadata the configuration to minimize, it is not changed
+	 * @return a new configuration without the redundant entries
+	 */
+	public ReflectionDescriptor minimize(ReflectionDescriptor metadata) {
+		ReflectionDescriptor merged = new ReflectionDescriptor();
+		merged.merge(metadata);
+		ReflectionDescriptor minimized = new ReflectionDescriptor();
+		int flagCount = 0;
+		for (ClassDescriptor cd : merged.getClassDescriptors()) {
+			flagCount += Integer.bitCount(cd.getFlagBits());
+			minimized.add(minimize(cd));
+		}
+		this.removedClasses = metadata.getClassDescriptors().size() - minimized.getClassDescriptors().size();
+		this.removedMembers = countMembers(metadata) - countMembers(minimized);
+		for (ClassDescriptor cd : minimized.getClassDescriptors()) {
+			flagCount -= Integer.bitCount(cd.getFlagBits());
+		}
+		this.removedFlags = flagCount;
+		if (this.measureBytes) {
+			this.removedBytes = size(metadata) - size(minimized);
+		}
+		return minimized;
+	}
+
+	private ClassDescriptor minimize(ClassDescriptor cd) {
+		ClassDescriptor result = ClassDescriptor.of(cd.getName());
+		int flags = cd.getFlagBits();
+		boolean allConstructors = cd.hasFlag(Flag.allDeclaredConstructors);
+		if (allConstructors) {
+			flags &= ~Flag.allPublicConstructors.mask();
+		}
+		boolean allMethods = (flags & ALL_METHODS) == ALL_METHODS;
+		result.setFlagBits(flags);
+		boolean allFields = (flags & ALL_FIELDS) == ALL_FIELDS;
+		if (cd.getFields() != null) {
+			for (FieldDescriptor fd : cd.getFields()) {
+				if (!allFields || fd.isAllowWrite()) {
+					result.addFieldDescriptor(fd);
+				}
+			}
+		}
+		if (cd.getMethods() != null) {
+			for (MethodDescriptor md : cd.getMethods()) {
+				boolean constructor = MethodDescriptor.CONSTRUCTOR_NAME.equals(md.getName());
+				if (constructor ? !allConstructors : !allMethods) {
+					result.addMethodDescriptor(md);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int countMembers(ReflectionDescriptor metadata) {
+		int count = 0;
+		for (ClassDescriptor cd : metadata.getClassDescriptors()) {
+			count += (cd.getFields() == null ? 0 : cd.getFields().size())
+					+ (cd.getMethods() == null ? 0 : cd.getMethods().size());
+		}
+		return count;
+	}
+
+	private static long size(ReflectionDescriptor metadata) {
+		CountingOutputStream out = new CountingOutputStream();
+		try {
+			new JsonMarshaller().write(metadata, out);
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		return out.count;
+	}
+
+	public int getRemovedClasses() {
+		return this.removedClasses;
+	}
+
+	public int getRemovedMembers() {
+		return this.removedMembers;
+	}
+
+	public int getRemovedFlags() {
+		return this.removedFlags;
+	}
+
+	/**
+	 * @return how much smaller the JSON form of the last minimized configuration is, or
+	 * -1 if it was not measured
+	 */
+	public long getRemovedBytes() {
+		return this.removedBytes;
+	}
+
+	public String getStatistics() {
+		return "removed " + this.removedClasses + " duplicate classes, " + this.removedMembers + " members, "
+				+ this.removedFlags + " flags" + ((this.removedBytes != -1) ? " (" + this.removedBytes + " bytes)" : "");
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+
+	}
+
+}
@@ -17,7 +17,6 @@
 package org.springframework.boot.graal.reflectconfig;
 
 import java.util.List;
-import java.util.Set;
 
 import org.springframework.boot.configurationprocessor.json.JSONArray;
 import org.springframework.boot.configurationprocessor.json.JSONObject;
@@ -41,11 +40,10 @@ class JsonConverter {
 	public JSONObject toJsonObject(ClassDescriptor cd) throws Exception {
 		JSONObject jsonObject = new JSONObject();
 		jsonObject.put("name", cd.getName());
-		Set<Flag> flags = cd.getFlags();
-		if (flags != null) {
-			for (Flag flag: Flag.values()) {
-				if (flags.contains(flag)) {
-					putTrueFlag(jsonObject,flag.name());
+		if (cd.getFlagBits() != 0) {
+			for (Flag flag: Flag.VALUES) {
+				if (cd.hasFlag(flag)) {
+					putTrueFlag(jsonObject,flag.getJsonKey());
 				}
 			}
 		}
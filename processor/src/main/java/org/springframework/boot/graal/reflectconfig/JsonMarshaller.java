@@ -19,7 +19,6 @@ package org.springframework.boot.graal.reflectconfig;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -36,35 +35,58 @@ import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
  */
 public class JsonMarshaller {
 
-	private static final int BUFFER_SIZE = 4098;
-
 	public void write(ReflectionDescriptor metadata, OutputStream outputStream)
 			throws IOException {
-		try {
-			JsonConverter converter = new JsonConverter();
-			JSONArray jsonArray = converter.toJsonArray(metadata);
-			outputStream.write(jsonArray.toString(2).getBytes(StandardCharsets.UTF_8));
-		}
-		catch (Exception ex) {
-			if (ex instanceof IOException) {
-				throw (IOException) ex;
-			}
-			if (ex instanceof RuntimeException) {
-				throw (RuntimeException) ex;
-			}
-			throw new IllegalStateException(ex);
-		}
+		write(metadata, outputStream, 2);
 	}
-	
+
+	/**
+	 * Write the metadata as JSON, streaming each descriptor straight to the output
+	 * rather than building the document in memory first.
+	 * @param metadata the metadata
+	 * @param outputStream the stream to write UTF-8 JSON to, it is flushed but not closed
+	 * @param indent the number of spaces to indent each level by, 0 for compact output
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void write(ReflectionDescriptor metadata, OutputStream outputStream, int indent)
+			throws IOException {
+		new JsonWriter(outputStream, indent).write(metadata);
+	}
+
 	public static ReflectionDescriptor read(String input) throws Exception {
 		try (ByteArrayInputStream bais = new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))) {
 			return read(bais);
 		}
 	}
 
+	/**
+	 * Read reflection metadata, building the descriptors directly as the stream is parsed.
+	 * @param inputStream the stream of UTF-8 JSON
+	 * @return the metadata
+	 * @throws Exception if the stream cannot be read or is not valid reflection metadata
+	 */
 	public static ReflectionDescriptor read(InputStream inputStream) throws Exception {
-		ReflectionDescriptor metadata = toReflectionDescriptor(new JSONArray(toString(inputStream)));
-		return metadata;
+		return new JsonReader(inputStream).read();
+	}
+
+	/**
+	 * Convert reflection metadata to a JSON array, for embedding in other JSON documents.
+	 * @param metadata the metadata
+	 * @return the JSON array, in the same form as {@link #write} produces
+	 * @throws Exception if the conversion fails
+	 */
+	public static JSONArray toJsonArray(ReflectionDescriptor metadata) throws Exception {
+		return new JsonConverter().toJsonArray(metadata);
+	}
+
+	/**
+	 * Read reflection metadata from a JSON array produced by {@link #toJsonArray}.
+	 * @param array the JSON array
+	 * @return the metadata
+	 * @throws Exception if the array is not valid reflection metadata
+	 */
+	public static ReflectionDescriptor read(JSONArray array) throws Exception {
+		return toReflectionDescriptor(array);
 	}
 	
 	private static ReflectionDescriptor toReflectionDescriptor(JSONArray array) throws Exception {
@@ -78,8 +100,8 @@ public class JsonMarshaller {
 	private static ClassDescriptor toClassDescriptor(JSONObject object) throws Exception {
 		ClassDescriptor cd = new ClassDescriptor();
 		cd.setName(object.getString("name"));
-		for (Flag f: Flag.values()) {
-			if (object.optBoolean(f.name())) {
+		for (Flag f: Flag.VALUES) {
+			if (object.optBoolean(f.getJsonKey())) {
 				cd.setFlag(f);
 			}
 		}
@@ -117,16 +139,4 @@ public class JsonMarshaller {
 		return new MethodDescriptor(name, listOfParameterTypes);
 	}
 
-	private static String toString(InputStream inputStream) throws IOException {
-		StringBuilder out = new StringBuilder();
-		InputStreamReader reader = new InputStreamReader(inputStream,
-				StandardCharsets.UTF_8);
-		char[] buffer = new char[BUFFER_SIZE];
-		int bytesRead;
-		while ((bytesRead = reader.read(buffer)) != -1) {
-			out.append(buffer, 0, bytesRead);
-		}
-		return out.toString();
-	}
-
 }
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.configurationprocessor.json.JSONException;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Pull parser that builds reflection descriptors directly from a stream of Graal
+ * reflect.json, without first reading the whole document into a string or building a
+ * JSON tree. Flags and {@code allowWrite} may be given as booleans or as the strings
+ * {@code "true"}/{@code "false"}, and keys that are not understood are skipped.
+ *
+ * @author Andy Clement
+ */
+class JsonReader {
+
+	private static final Map<String, Flag> FLAGS = new HashMap<>();
+
+	static {
+		for (Flag flag : Flag.VALUES) {
+			FLAGS.put(flag.getJsonKey(), flag);
+		}
+	}
+
+	private final Reader reader;
+
+	private final char[] buffer = new char[8192];
+
+	private int position;
+
+	private int limit;
+
+	private long consumed;
+
+	private final StringBuilder string = new StringBuilder();
+
+	JsonReader(InputStream inputStream) {
+		this.reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+	}
+
+	ReflectionDescriptor read() throws IOException, JSONException {
+		ReflectionDescriptor rd = new ReflectionDescriptor();
+		expect('[');
+		if (!consumeIf(']')) {
+			do {
+				rd.add(readClassDescriptor());
+			}
+			while (nextInList(']'));
+		}
+		if (nextNonWhitespace() != -1) {
+			throw syntaxError("Unexpected content after the end of the array");
+		}
+		return rd;
+	}
+
+	private ClassDescriptor readClassDescriptor() throws IOException, JSONException {
+		ClassDescriptor cd = new ClassDescriptor();
+		expect('{');
+		if (!consumeIf('}')) {
+			do {
+				String key = readString();
+				expect(':');
+				Flag flag = FLAGS.get(key);
+				if (flag != null) {
+					if (readBoolean()) {
+						cd.setFlag(flag);
+					}
+				}
+				else if (key.equals("name")) {
+					cd.setName(readString());
+				}
+				else if (key.equals("fields")) {
+					if (!consumeNull()) {
+						expect('[');
+						if (!consumeIf(']')) {
+							do {
+								cd.addFieldDescriptor(readFieldDescriptor());
+							}
+							while (nextInList(']'));
+						}
+					}
+				}
+				else if (key.equals("methods")) {
+					if (!consumeNull()) {
+						expect('[');
+						if (!consumeIf(']')) {
+							do {
+								cd.addMethodDescriptor(readMethodDescriptor());
+							}
+							while (nextInList(']'));
+						}
+					}
+				}
+				else {
+					skipValue();
+				}
+			}
+			while (nextInList('}'));
+		}
+		if (cd.getName() == null) {
+			throw syntaxError("No value for name");
+		}
+		return cd;
+	}
+
+	private FieldDescriptor readFieldDescriptor() throws IOException, JSONException {
+		String name = null;
+		boolean allowWrite = false;
+		expect('{');
+		if (!consumeIf('}')) {
+			do {
+				String key = readString();
+				expect(':');
+				if (key.equals("name")) {
+					name = readString();
+				}
+				else if (key.equals("allowWrite")) {
+					allowWrite = readBoolean();
+				}
+				else {
+					skipValue();
+				}
+			}
+			while (nextInList('}'));
+		}
+		if (name == null) {
+			throw syntaxError("No value for name");
+		}
+		return new FieldDescriptor(name, allowWrite);
+	}
+
+	private MethodDescriptor readMethodDescriptor() throws IOException, JSONException {
+		String name = null;
+		List<String> parameterTypes = null;
+		expect('{');
+		if (!consumeIf('}')) {
+			do {
+				String key = readString();
+				expect(':');
+				if (key.equals("name")) {
+					name = readString();
+				}
+				else if (key.equals("parameterTypes")) {
+					if (!consumeNull()) {
+						parameterTypes = new ArrayList<>();
+						expect('[');
+						if (!consumeIf(']')) {
+							do {
+								parameterTypes.add(readString());
+							}
+							while (nextInList(']'));
+						}
+					}
+				}
+				else {
+					skipValue();
+				}
+			}
+			while (nextInList('}'));
+		}
+		if (name == null) {
+			throw syntaxError("No value for name");
+		}
+		return new MethodDescriptor(name, parameterTypes);
+	}
+
+	/**
+	 * Read a boolean given either as a literal or as a string, anything else is false.
+	 */
+	private boolean readBoolean() throws IOException, JSONException {
+		int c = peekNonWhitespace();
+		if (c == '"') {
+			return "true".equalsIgnoreCase(readString());
+		}
+		if (c == 't' || c == 'f') {
+			return "true".equals(readLiteral());
+		}
+		skipValue();
+		return false;
+	}
+
+	private boolean consumeNull() throws IOException, JSONException {
+		if (peekNonWhitespace() == 'n') {
+			String literal = readLiteral();
+			if (!literal.equals("null")) {
+				throw syntaxError("Unexpected " + literal);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private void skipValue() throws IOException, JSONException {
+		int c = peekNonWhitespace();
+		if (c == '"') {
+			readString();
+		}
+		else if (c == '{') {
+			expect('{');
+			if (!consumeIf('}')) {
+				do {
+					readString();
+					expect(':');
+					skipValue();
+				}
+				while (nextInList('}'));
+			}
+		}
+		else if (c == '[') {
+			expect('[');
+			if (!consumeIf(']')) {
+				do {
+					skipValue();
+				}
+				while (nextInList(']'));
+			}
+		}
+		else {
+			readLiteral();
+		}
+	}
+
+	/**
+	 * Read a number or one of {@code true}, {@code false} and {@code null}.
+	 */
+	private String readLiteral() throws IOException, JSONException {
+		this.string.setLength(0);
+		int c;
+		while ((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+			this.string.append((char) c);
+			this.position++;
+		}
+		if (this.string.length() == 0) {
+			throw syntaxError("Expected a value");
+		}
+		return this.string.toString();
+	}
+
+	private String readString() throws IOException, JSONException {
+		expect('"');
+		this.string.setLength(0);
+		while (true) {
+			int c = next();
+			if (c == '"') {
+				return this.string.toString();
+			}
+			if (c == -1) {
+				throw syntaxError("Unterminated string");
+			}
+			if (c == '\\') {
+				c = next();
+				switch (c) {
+				case 'u':
+					char[] hex = new char[4];
+					for (int i = 0; i < 4; i++) {
+						int h = next();
+						if (h == -1) {
+							throw syntaxError("Unterminated escape sequence");
+						}
+						hex[i] = (char) h;
+					}
+					try {
+						this.string.append((char) Integer.parseInt(new String(hex), 16));
+					}
+					catch (NumberFormatException ex) {
+						throw syntaxError("Invalid escape sequence");
+					}
+					break;
+				case 't':
+					this.string.append('\t');
+					break;
+				case 'b':
+					this.string.append('\b');
+					break;
+				case 'n':
+					this.string.append('\n');
+					break;
+				case 'r':
+					this.string.append('\r');
+					break;
+				case 'f':
+					this.string.append('\f');
+					break;
+				case -1:
+					throw syntaxError("Unterminated escape sequence");
+				default:
+					this.string.append((char) c);
+				}
+			}
+			else {
+				this.string.append((char) c);
+			}
+		}
+	}
+
+	/**
+	 * After an element of an array or object, consume the separator.
+	 * @return {@code true} if another element follows, {@code false} if the closing
+	 * character was consumed
+	 */
+	private boolean nextInList(char close) throws IOException, JSONException {
+		int c = nextNonWhitespace();
+		if (c == ',') {
+			return true;
+		}
+		if (c == close) {
+			return false;
+		}
+		throw syntaxError("Expected ',' or '" + close + "'");
+	}
+
+	private void expect(char expected) throws IOException, JSONException {
+		if (nextNonWhitespace() != expected) {
+			throw syntaxError("Expected '" + expected + "'");
+		}
+	}
+
+	private boolean consumeIf(char expected) throws IOException {
+		if (peekNonWhitespace() == expected) {
+			this.position++;
+			return true;
+		}
+		return false;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c = peekNonWhitespace();
+		if (c != -1) {
+			this.position++;
+		}
+		return c;
+	}
+
+	private int peekNonWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && (c == ' ' || c == '\n' || c == '\r' || c == '\t')) {
+			this.position++;
+		}
+		return c;
+	}
+
+	private int next() throws IOException {
+		int c = peek();
+		if (c != -1) {
+			this.position++;
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (this.position == this.limit) {
+			this.consumed += this.limit;
+			this.position = 0;
+			this.limit = Math.max(this.reader.read(this.buffer), 0);
+			if (this.limit == 0) {
+				return -1;
+			}
+		}
+		return this.buffer[this.position];
+	}
+
+	private JSONException syntaxError(String message) {
+		return new JSONException(message + " at character " + (this.consumed + this.position));
+	}
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Writes reflection descriptors as JSON directly to a stream, one descriptor at a time,
+ * so no tree or string of the whole document is built. The output is the same as
+ * rendering the {@link JsonConverter} tree with {@code toString(indent)}.
+ *
+ * @author Andy Clement
+ */
+class JsonWriter {
+
+	private enum Scope {
+		EMPTY_ARRAY, NONEMPTY_ARRAY, EMPTY_OBJECT, DANGLING_KEY, NONEMPTY_OBJECT
+	}
+
+	private final Writer out;
+
+	private final String indent;
+
+	private final List<Scope> stack = new ArrayList<>();
+
+	/**
+	 * Create a new writer.
+	 * @param outputStream the stream to write UTF-8 JSON to
+	 * @param indentSpaces the number of spaces to indent each level by, 0 for compact
+	 * output on a single line
+	 */
+	JsonWriter(OutputStream outputStream, int indentSpaces) {
+		this.out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		if (indentSpaces > 0) {
+			StringBuilder indent = new StringBuilder();
+			for (int i = 0; i < indentSpaces; i++) {
+				indent.append(' ');
+			}
+			this.indent = indent.toString();
+		}
+		else {
+			this.indent = null;
+		}
+	}
+
+	void write(ReflectionDescriptor metadata) throws IOException {
+		beginArray();
+		for (ClassDescriptor cd : metadata.getClassDescriptors()) {
+			write(cd);
+		}
+		endArray();
+		this.out.flush();
+	}
+
+	private void write(ClassDescriptor cd) throws IOException {
+		beginObject();
+		if (cd.getName() != null) {
+			name("name").value(cd.getName());
+		}
+		if (cd.getFlagBits() != 0) {
+			for (Flag flag : Flag.VALUES) {
+				if (cd.hasFlag(flag)) {
+					name(flag.getJsonKey()).value(true);
+				}
+			}
+		}
+		List<FieldDescriptor> fds = cd.getFields();
+		if (fds != null) {
+			name("fields").beginArray();
+			for (FieldDescriptor fd : fds) {
+				beginObject();
+				name("name").value(fd.getName());
+				if (fd.isAllowWrite()) {
+					name("allowWrite").value("true");
+				}
+				endObject();
+			}
+			endArray();
+		}
+		List<MethodDescriptor> mds = cd.getMethods();
+		if (mds != null) {
+			name("methods").beginArray();
+			for (MethodDescriptor md : mds) {
+				beginObject();
+				name("name").value(md.getName());
+				name("parameterTypes").beginArray();
+				List<String> parameterTypes = md.getParameterTypes();
+				if (parameterTypes != null) {
+					for (String pt : parameterTypes) {
+						value(pt);
+					}
+				}
+				endArray();
+				endObject();
+			}
+			endArray();
+		}
+		endObject();
+	}
+
+	private JsonWriter beginArray() throws IOException {
+		beforeValue();
+		this.stack.add(Scope.EMPTY_ARRAY);
+		this.out.write('[');
+		return this;
+	}
+
+	private JsonWriter endArray() throws IOException {
+		return close(Scope.EMPTY_ARRAY, ']');
+	}
+
+	private JsonWriter beginObject() throws IOException {
+		beforeValue();
+		this.stack.add(Scope.EMPTY_OBJECT);
+		this.out.write('{');
+		return this;
+	}
+
+	private JsonWriter endObject() throws IOException {
+		return close(Scope.EMPTY_OBJECT, '}');
+	}
+
+	private JsonWriter close(Scope empty, char closeBracket) throws IOException {
+		Scope context = this.stack.remove(this.stack.size() - 1);
+		if (context != empty) {
+			newline();
+		}
+		this.out.write(closeBracket);
+		return this;
+	}
+
+	private JsonWriter name(String name) throws IOException {
+		if (peek() == Scope.NONEMPTY_OBJECT) {
+			this.out.write(',');
+		}
+		newline();
+		replaceTop(Scope.DANGLING_KEY);
+		string(name);
+		return this;
+	}
+
+	private JsonWriter value(String value) throws IOException {
+		beforeValue();
+		string(value);
+		return this;
+	}
+
+	private JsonWriter value(boolean value) throws IOException {
+		beforeValue();
+		this.out.write(value ? "true" : "false");
+		return this;
+	}
+
+	private void beforeValue() throws IOException {
+		if (this.stack.isEmpty()) {
+			return;
+		}
+		Scope context = peek();
+		if (context == Scope.EMPTY_ARRAY) {
+			replaceTop(Scope.NONEMPTY_ARRAY);
+			newline();
+		}
+		else if (context == Scope.NONEMPTY_ARRAY) {
+			this.out.write(',');
+			newline();
+		}
+		else if (context == Scope.DANGLING_KEY) {
+			this.out.write(this.indent == null ? ":" : ": ");
+			replaceTop(Scope.NONEMPTY_OBJECT);
+		}
+	}
+
+	private Scope peek() {
+		return this.stack.get(this.stack.size() - 1);
+	}
+
+	private void replaceTop(Scope scope) {
+		this.stack.set(this.stack.size() - 1, scope);
+	}
+
+	private void newline() throws IOException {
+		if (this.indent == null) {
+			return;
+		}
+		this.out.write('\n');
+		for (int i = 0; i < this.stack.size(); i++) {
+			this.out.write(this.indent);
+		}
+	}
+
+	private void string(String value) throws IOException {
+		this.out.write('"');
+		for (int i = 0, length = value.length(); i < length; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				this.out.write('\\');
+				this.out.write(c);
+				break;
+			case '\t':
+				this.out.write("\\t");
+				break;
+			case '\b':
+				this.out.write("\\b");
+				break;
+			case '\n':
+				this.out.write("\\n");
+				break;
+			case '\r':
+				this.out.write("\\r");
+				break;
+			case '\f':
+				this.out.write("\\f");
+				break;
+			default:
+				if (c <= 0x1F) {
+					this.out.write(String.format("\\u%04x", (int) c));
+				}
+				else {
+					this.out.write(c);
+				}
+				break;
+			}
+		}
+		this.out.write('"');
+	}
+
+}
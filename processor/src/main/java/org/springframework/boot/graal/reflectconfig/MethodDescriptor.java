@@ -31,14 +31,14 @@ public final class MethodDescriptor extends MemberDescriptor implements Comparab
 	
 	public final static List<String> NO_PARAMS = Collections.emptyList();
 	
-	private List<String> parameterTypes; // e.g. char[], java.lang.String, java.lang.Object[]
+	private List<String> parameterTypes; // e.g. char[], java.lang.String, java.lang.Object[], pooled so unmodifiable
 
 	MethodDescriptor() {
 	}
 	
 	MethodDescriptor(String name, List<String> parameterTypes) {
 		super(name);
-		this.parameterTypes = parameterTypes;
+		this.parameterTypes = TypeNamePool.get().parameterTypes(parameterTypes);
 	}
 
 	public List<String> getParameterTypes() {
@@ -46,7 +46,7 @@ public final class MethodDescriptor extends MemberDescriptor implements Comparab
 	}
 	
 	public void setParameterTypes(List<String> parameterTypes) {
-		this.parameterTypes = parameterTypes;
+		this.parameterTypes = TypeNamePool.get().parameterTypes(parameterTypes);
 	}
 
 	@Override
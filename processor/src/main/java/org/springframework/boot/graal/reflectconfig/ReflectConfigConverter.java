@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts reflection configuration between the Graal JSON format, which native-image
+ * needs, and the binary format written by {@link BinaryMarshaller}, which is quicker for
+ * tooling to load. The direction is decided by the content of the input:
+ *
+ * <pre>
+ * java -cp spring-boot-graal-processor.jar org.springframework.boot.graal.reflectconfig.ReflectConfigConverter reflect.json reflect.bin
+ * java -cp spring-boot-graal-processor.jar org.springframework.boot.graal.reflectconfig.ReflectConfigConverter reflect.bin reflect.json
+ * </pre>
+ *
+ * @author Andy Clement
+ */
+public class ReflectConfigConverter {
+
+	public static void main(String[] args) throws Exception {
+		if (args == null || args.length != 2) {
+			System.out.println("Usage: ReflectConfigConverter <input .json or .bin> <output>");
+			System.exit(0);
+		}
+		File input = new File(args[0]);
+		if (!input.exists()) {
+			System.out.println("File " + input + " does not exist!");
+			System.exit(0);
+		}
+		boolean toJson = convert(input, new File(args[1]));
+		System.out.println("Wrote " + (toJson ? "JSON" : "binary") + " reflection configuration to " + args[1]);
+	}
+
+	/**
+	 * Convert a file from one format to the other.
+	 * @param input the file to read, JSON or binary
+	 * @param output the file to write in the other format
+	 * @return {@code true} if JSON was written, {@code false} if binary was
+	 * @throws Exception if the input cannot be read or the output written
+	 */
+	public static boolean convert(File input, File output) throws Exception {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(input));
+				OutputStream out = new FileOutputStream(output)) {
+			boolean toJson = BinaryMarshaller.isBinary(in);
+			ReflectionDescriptor metadata = read(in);
+			if (toJson) {
+				new JsonMarshaller().write(metadata, out);
+			}
+			else {
+				new BinaryMarshaller().write(metadata, out);
+			}
+			return toJson;
+		}
+	}
+
+	/**
+	 * Read reflection configuration in either format.
+	 * @param inputStream the stream to read
+	 * @return the metadata
+	 * @throws Exception if the stream cannot be read or is not reflection configuration
+	 */
+	public static ReflectionDescriptor read(InputStream inputStream) throws Exception {
+		InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+		return BinaryMarshaller.isBinary(in) ? BinaryMarshaller.read(in) : JsonMarshaller.read(in);
+	}
+
+}
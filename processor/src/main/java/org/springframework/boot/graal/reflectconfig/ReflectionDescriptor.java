@@ -17,7 +17,12 @@
 package org.springframework.boot.graal.reflectconfig;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * https://github.com/oracle/graal/blob/master/substratevm/REFLECTION.md
@@ -26,22 +31,104 @@ import java.util.List;
  */
 public class ReflectionDescriptor {
 
+	/**
+	 * Below this many incoming descriptors a parallel merge is done sequentially.
+	 */
+	static final int PARALLEL_MERGE_THRESHOLD = 8192;
+
 	private final List<ClassDescriptor> classDescriptors;
 
+	private final Map<String, ClassDescriptor> classDescriptorsByName; // first added wins
+
 	public ReflectionDescriptor() {
 		this.classDescriptors = new ArrayList<>();
+		this.classDescriptorsByName = new HashMap<>();
 	}
 
 	public ReflectionDescriptor(ReflectionDescriptor metadata) {
 		this.classDescriptors = new ArrayList<>(metadata.classDescriptors);
+		this.classDescriptorsByName = new HashMap<>(metadata.classDescriptorsByName);
 	}
 
+	/**
+	 * @return the class descriptors in the order they were added
+	 */
 	public List<ClassDescriptor> getClassDescriptors() {
-		return this.classDescriptors;
+		return Collections.unmodifiableList(this.classDescriptors);
 	}
 
 	public void add(ClassDescriptor classDescriptor) {
 		this.classDescriptors.add(classDescriptor);
+		this.classDescriptorsByName.putIfAbsent(classDescriptor.getName(), classDescriptor);
+	}
+
+	/**
+	 * Merge another descriptor into this one. Classes not yet present are added, as
+	 * copies, in the order they appear in the other descriptor. For classes present in
+	 * both the flags are combined, a field is writable if either says so and methods
+	 * with the same name and parameter types appear once. The other descriptor is not
+	 * changed. Large descriptors are merged with {@link #mergeParallel}.
+	 * 
+	 * @param other the descriptor to merge into this one
+	 */
+	public void merge(ReflectionDescriptor other) {
+		if (other.classDescriptors.size() >= PARALLEL_MERGE_THRESHOLD) {
+			mergeParallel(other);
+		}
+		else {
+			mergeSequentially(other);
+		}
+	}
+
+	void mergeSequentially(ReflectionDescriptor other) {
+		for (ClassDescriptor cd : other.classDescriptors) {
+			ClassDescriptor existing = this.classDescriptorsByName.get(cd.getName());
+			if (existing == null) {
+				add(cd.copy());
+			}
+			else {
+				existing.merge(cd);
+			}
+		}
+	}
+
+	/**
+	 * Same result as {@link #merge(ReflectionDescriptor)} but, for large descriptors,
+	 * classes are partitioned by name and the partitions merged on the common fork join
+	 * pool.
+	 * 
+	 * @param other the descriptor to merge into this one
+	 */
+	public void mergeParallel(ReflectionDescriptor other) {
+		int partitions = Math.min(ForkJoinPool.getCommonPoolParallelism(), 64);
+		if (other.classDescriptors.size() < PARALLEL_MERGE_THRESHOLD || partitions < 2) {
+			mergeSequentially(other);
+			return;
+		}
+		// Each partition owns its class names, so existing descriptors are merged into
+		// without contention and the shared index is only read
+		List<List<ClassDescriptor>> incoming = new ArrayList<>(partitions);
+		List<Map<String, ClassDescriptor>> added = new ArrayList<>(partitions);
+		for (int p = 0; p < partitions; p++) {
+			incoming.add(new ArrayList<>());
+			added.add(new HashMap<>());
+		}
+		for (ClassDescriptor cd : other.classDescriptors) {
+			incoming.get(partition(cd.getName(), partitions)).add(cd);
+		}
+		ForkJoinPool.commonPool().invoke(new MergeTask(incoming, added, 0, partitions));
+		for (ClassDescriptor cd : other.classDescriptors) {
+			Map<String, ClassDescriptor> partition = added.get(partition(cd.getName(), partitions));
+			ClassDescriptor copy = partition.remove(cd.getName());
+			if (copy != null) {
+				add(copy);
+			}
+		}
+	}
+
+	private static int partition(String name, int partitions) {
+		int h = name.hashCode();
+		return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % partitions;
 	}
 
 	@Override
@@ -67,21 +154,56 @@ public class ReflectionDescriptor {
 	}
 
 	public boolean hasClassDescriptor(String string) {
-		for (ClassDescriptor cd: classDescriptors) {
-			if (cd.getName().equals(string)) {
-				return true;
-			}
-		}
-		return false;
+		return classDescriptorsByName.containsKey(string);
 	}
 
 	public ClassDescriptor getClassDescriptor(String type) {
-		for (ClassDescriptor cd: classDescriptors) {
-			if (cd.getName().equals(type)) {
-				return cd;
+		return classDescriptorsByName.get(type);
+	}
+
+	/**
+	 * Merges the classes of a range of partitions, splitting the range until each task
+	 * handles a single partition.
+	 */
+	private class MergeTask extends RecursiveAction {
+
+		private final List<List<ClassDescriptor>> incoming;
+
+		private final List<Map<String, ClassDescriptor>> added;
+
+		private final int from;
+
+		private final int to;
+
+		MergeTask(List<List<ClassDescriptor>> incoming, List<Map<String, ClassDescriptor>> added, int from, int to) {
+			this.incoming = incoming;
+			this.added = added;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new MergeTask(this.incoming, this.added, this.from, mid),
+						new MergeTask(this.incoming, this.added, mid, this.to));
+				return;
+			}
+			Map<String, ClassDescriptor> added = this.added.get(this.from);
+			for (ClassDescriptor cd : this.incoming.get(this.from)) {
+				ClassDescriptor existing = classDescriptorsByName.get(cd.getName());
+				if (existing == null) {
+					existing = added.get(cd.getName());
+				}
+				if (existing == null) {
+					added.put(cd.getName(), cd.copy());
+				}
+				else {
+					existing.merge(cd);
+				}
 			}
 		}
-		return null;
 	}
 
 }
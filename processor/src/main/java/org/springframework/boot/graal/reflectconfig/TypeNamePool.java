@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonical instances of the type names and parameter type lists used by descriptors.
+ * The same few names (java.lang.String, java.lang.Object[], ...) appear in a huge
+ * number of method signatures, every descriptor shares one copy of each name and of
+ * each distinct parameter list. Shared parameter lists are unmodifiable.
+ * <p>
+ * The pool holds on to every name it has seen, code that outlives the descriptors it
+ * creates should {@link #clear()} it once they are no longer needed, as the annotation
+ * processor does at the end of each compilation.
+ *
+ * @author Andy Clement
+ * @see ClassDescriptor
+ * @see MethodDescriptor
+ */
+public final class TypeNamePool {
+
+	private static final TypeNamePool INSTANCE = new TypeNamePool();
+
+	private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<List<String>, List<String>> parameterLists = new ConcurrentHashMap<>();
+
+	private final AtomicLong nameLookups = new AtomicLong();
+
+	private final AtomicLong listLookups = new AtomicLong();
+
+	private TypeNamePool() {
+	}
+
+	/**
+	 * @return the pool all descriptors go through
+	 */
+	public static TypeNamePool get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param name a type name, e.g. java.lang.String or char[]
+	 * @return the canonical instance of that name, null if name is null
+	 */
+	public String name(String name) {
+		if (name == null) {
+			return null;
+		}
+		nameLookups.incrementAndGet();
+		String existing = names.putIfAbsent(name, name);
+		return existing == null ? name : existing;
+	}
+
+	/**
+	 * @param parameterTypes a list of parameter type names
+	 * @return an unmodifiable list equal to the one passed in, shared with every other
+	 * descriptor using the same parameter types. Null if parameterTypes is null.
+	 */
+	public List<String> parameterTypes(List<String> parameterTypes) {
+		if (parameterTypes == null) {
+			return null;
+		}
+		if (parameterTypes.isEmpty()) {
+			return MethodDescriptor.NO_PARAMS;
+		}
+		listLookups.incrementAndGet();
+		List<String> existing = parameterLists.get(parameterTypes);
+		if (existing != null) {
+			return existing;
+		}
+		List<String> canonical = new ArrayList<>(parameterTypes.size());
+		for (String parameterType : parameterTypes) {
+			canonical.add(name(parameterType));
+		}
+		canonical = Collections.unmodifiableList(canonical);
+		existing = parameterLists.putIfAbsent(canonical, canonical);
+		return existing == null ? canonical : existing;
+	}
+
+	/**
+	 * Forget all pooled instances, descriptors already created keep theirs. Clearing
+	 * while descriptors are still being created is safe, they just share less.
+	 */
+	public void clear() {
+		names.clear();
+		parameterLists.clear();
+		nameLookups.set(0);
+		listLookups.set(0);
+	}
+
+	public int getNameCount() {
+		return names.size();
+	}
+
+	public int getParameterListCount() {
+		return parameterLists.size();
+	}
+
+	/**
+	 * @return an estimate of the bytes no longer retained because duplicate names and
+	 * parameter lists were replaced by the pooled instances
+	 */
+	public long getEstimatedSavedBytes() {
+		long saved = 0;
+		long duplicateNames = nameLookups.get() - names.size();
+		if (duplicateNames > 0 && !names.isEmpty()) {
+			long chars = 0;
+			for (String name : names.keySet()) {
+				chars += name.length();
+			}
+			// String header + hash + value reference, plus the char[] header and contents
+			saved += duplicateNames * (24 + 16 + 2 * (chars / names.size()));
+		}
+		long duplicateLists = listLookups.get() - parameterLists.size();
+		if (duplicateLists > 0) {
+			// ArrayList + backing array, an average signature is short
+			saved += duplicateLists * (24 + 16 + 4 * 2);
+		}
+		return saved;
+	}
+
+	public String getStatistics() {
+		return names.size() + " distinct type names (" + nameLookups.get() + " lookups), "
+				+ parameterLists.size() + " distinct parameter lists (" + listLookups.get()
+				+ " lookups), ~" + (getEstimatedSavedBytes() / 1024) + "KB saved";
+	}
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic.Kind;
+
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+import org.springframework.boot.reflectionprocessor.ConditionEvaluator.ClassConditions;
+import org.springframework.boot.reflectionprocessor.SpringFactoriesReader.SpringFactories;
+
+/**
+ * On-disk cache of what the processor derives from the compilation classpath. Each
+ * classpath entry is fingerprinted (size and modification time for a jar, file count
+ * and latest modification time for a directory) and the cache records, per entry, the
+ * spring.factories contents and the class conditions of the types that entry
+ * defines. Entries whose fingerprint is unchanged are not re-read.
+ * <p>
+ * Whether a type is available depends on the whole classpath, so type availability
+ * results are only reused when the fingerprint of every entry (and the JDK) is
+ * unchanged. Types defined by the sources being compiled, or compiled from them by an
+ * earlier build, are never recorded, see {@link TypeAvailabilityOracle}.
+ *
+ * @author Andy Clement
+ */
+class ClasspathCache {
+
+	static final String CACHE_FILE = "classpath-cache.json";
+
+	private static final int VERSION = 4;
+
+	private final File file;
+
+	private final Map<String, CachedEntry> previousEntries;
+
+	private final String previousClasspathFingerprint;
+
+	private final Map<String, Boolean> previousAvailability;
+
+	private final Map<String, CachedEntry> entries = new LinkedHashMap<>();
+
+	private final Map<String, String> fingerprints = new HashMap<>();
+
+	private final Map<String, Boolean> availability = new TreeMap<>();
+
+	private String classpathFingerprint;
+
+	private int entryHits;
+
+	private int entryMisses;
+
+	private int conditionHits;
+
+	private int conditionMisses;
+
+	private int availabilityHits;
+
+	private int availabilityMisses;
+
+	private ClasspathCache(File file, Map<String, CachedEntry> previousEntries, String previousClasspathFingerprint,
+			Map<String, Boolean> previousAvailability) {
+		this.file = file;
+		this.previousEntries = previousEntries;
+		this.previousClasspathFingerprint = previousClasspathFingerprint;
+		this.previousAvailability = previousAvailability;
+	}
+
+	/**
+	 * Load the cache from the specified file, a missing or unreadable file gives an
+	 * empty cache.
+	 * @param file the cache file
+	 * @param entries the entries of the current classpath
+	 * @return the cache
+	 */
+	static ClasspathCache load(File file, List<File> entries) {
+		return load(file, entries, null);
+	}
+
+	/**
+	 * Load the cache from the specified file, a missing or unreadable file gives an
+	 * empty cache.
+	 * @param file the cache file
+	 * @param entries the entries of the current classpath
+	 * @param messager reports an unreadable file, may be {@code null}
+	 * @return the cache
+	 */
+	static ClasspathCache load(File file, List<File> entries, Messager messager) {
+		Map<String, CachedEntry> previousEntries = new HashMap<>();
+		Map<String, Boolean> previousAvailability = new HashMap<>();
+		String previousClasspathFingerprint = null;
+		if (file.isFile()) {
+			try {
+				JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+				if (json.optInt("version") == VERSION) {
+					previousClasspathFingerprint = json.optString("classpath", null);
+					JSONObject jsonEntries = json.getJSONObject("entries");
+					for (Iterator<?> keys = jsonEntries.keys(); keys.hasNext();) {
+						String path = (String) keys.next();
+						previousEntries.put(path, CachedEntry.fromJson(new File(path), jsonEntries.getJSONObject(path)));
+					}
+					readNames(json.optJSONArray("available"), true, previousAvailability);
+					readNames(json.optJSONArray("unavailable"), false, previousAvailability);
+				}
+			}
+			catch (Exception ex) {
+				if (messager != null) {
+					messager.printMessage(Kind.WARNING,
+							"Ignoring unreadable classpath cache " + file + ": " + ex.getMessage());
+				}
+				previousEntries.clear();
+				previousAvailability.clear();
+				previousClasspathFingerprint = null;
+			}
+		}
+		ClasspathCache cache = new ClasspathCache(file, previousEntries, previousClasspathFingerprint,
+				previousAvailability);
+		cache.fingerprint(entries);
+		return cache;
+	}
+
+	private void fingerprint(List<File> classpathEntries) {
+		this.classpathFingerprint = fingerprint(classpathEntries, this.fingerprints);
+		if (this.classpathFingerprint.equals(this.previousClasspathFingerprint)) {
+			this.availability.putAll(this.previousAvailability);
+		}
+	}
+
+	/**
+	 * Compute a fingerprint for a whole classpath, it changes if any entry or the JDK
+	 * version changes.
+	 * @param classpathEntries the classpath entries
+	 * @param entryFingerprints populated with the fingerprint of each entry, keyed by
+	 * absolute path
+	 * @return the fingerprint
+	 */
+	static String fingerprint(List<File> classpathEntries, Map<String, String> entryFingerprints) {
+		StringBuilder all = new StringBuilder(System.getProperty("java.version"));
+		for (File entry : classpathEntries) {
+			String fingerprint = fingerprint(entry);
+			entryFingerprints.put(entry.getAbsolutePath(), fingerprint);
+			all.append('\n').append(entry.getAbsolutePath()).append('=').append(fingerprint);
+		}
+		return sha1(all.toString());
+	}
+
+	String getClasspathFingerprint() {
+		return this.classpathFingerprint;
+	}
+
+	static String fingerprint(File entry) {
+		if (entry.isFile()) {
+			return entry.length() + ":" + entry.lastModified();
+		}
+		if (entry.isDirectory()) {
+			long[] countAndLatest = new long[2];
+			scan(entry, countAndLatest);
+			return "dir:" + countAndLatest[0] + ":" + countAndLatest[1];
+		}
+		return "missing";
+	}
+
+	private static void scan(File directory, long[] countAndLatest) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				scan(file, countAndLatest);
+			}
+			else {
+				countAndLatest[0]++;
+				countAndLatest[1] = Math.max(countAndLatest[1], file.lastModified());
+			}
+		}
+	}
+
+	/**
+	 * @param entry a classpath entry
+	 * @return the cached factories for the entry, or {@code null} if the entry is not
+	 * cached or has changed since it was cached
+	 */
+	SpringFactories getFactories(File entry) {
+		String path = entry.getAbsolutePath();
+		CachedEntry cached = this.previousEntries.get(path);
+		if (cached != null && cached.fingerprint.equals(this.fingerprints.get(path))) {
+			this.entryHits++;
+			this.entries.put(path, cached);
+			return cached.factories;
+		}
+		this.entryMisses++;
+		return null;
+	}
+
+	void putFactories(SpringFactories factories) {
+		String path = factories.getSource().getAbsolutePath();
+		this.entries.put(path, new CachedEntry(this.fingerprints.get(path), factories, new TreeMap<>()));
+	}
+
+	/**
+	 * @param entry the classpath entry defining the type
+	 * @param typename the type
+	 * @return the class conditions of the type, or {@code null} if not cached
+	 */
+	ClassConditions getConditions(File entry, String typename) {
+		CachedEntry cached = this.entries.get(entry.getAbsolutePath());
+		ClassConditions conditions = (cached != null) ? cached.conditions.get(typename) : null;
+		if (conditions != null) {
+			this.conditionHits++;
+		}
+		else {
+			this.conditionMisses++;
+		}
+		return conditions;
+	}
+
+	void putConditions(File entry, String typename, ClassConditions conditions) {
+		CachedEntry cached = this.entries.get(entry.getAbsolutePath());
+		if (cached != null) {
+			cached.conditions.put(typename, conditions);
+		}
+	}
+
+	/**
+	 * @param typename a type name
+	 * @return whether the type was available the last time the same classpath was
+	 * processed, or {@code null} if that is not known
+	 */
+	Boolean getAvailability(String typename) {
+		Boolean available = this.availability.get(typename);
+		if (available != null) {
+			this.availabilityHits++;
+		}
+		else {
+			this.availabilityMisses++;
+		}
+		return available;
+	}
+
+	/**
+	 * Record whether a type is available, only for types the sources being compiled do
+	 * not define.
+	 * @param typename a type name
+	 * @param available whether the type is available
+	 */
+	void putAvailability(String typename, boolean available) {
+		this.availability.put(typename, available);
+	}
+
+	void save() throws IOException {
+		JSONObject json = new JSONObject();
+		try {
+			json.put("version", VERSION);
+			json.put("classpath", this.classpathFingerprint);
+			JSONObject jsonEntries = new JSONObject();
+			for (Map.Entry<String, CachedEntry> entry : this.entries.entrySet()) {
+				jsonEntries.put(entry.getKey(), entry.getValue().toJson());
+			}
+			json.put("entries", jsonEntries);
+			JSONArray available = new JSONArray();
+			JSONArray unavailable = new JSONArray();
+			this.availability.forEach((name, isAvailable) -> (isAvailable ? available : unavailable).put(name));
+			json.put("available", available);
+			json.put("unavailable", unavailable);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Unable to build classpath cache", ex);
+		}
+		this.file.getParentFile().mkdirs();
+		Files.write(this.file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	String getStatistics() {
+		return String.format("classpath entries %d hits/%d misses, conditions %d hits/%d misses, "
+				+ "type availability %d hits/%d misses", this.entryHits, this.entryMisses, this.conditionHits,
+				this.conditionMisses, this.availabilityHits, this.availabilityMisses);
+	}
+
+	int getEntryHits() {
+		return this.entryHits;
+	}
+
+	int getEntryMisses() {
+		return this.entryMisses;
+	}
+
+	private static void readNames(JSONArray names, boolean available, Map<String, Boolean> into) throws Exception {
+		if (names != null) {
+			for (int i = 0; i < names.length(); i++) {
+				into.put(names.getString(i), available);
+			}
+		}
+	}
+
+	static String sha1(String s) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static class CachedEntry {
+
+		private final String fingerprint;
+
+		private final SpringFactories factories;
+
+		private final Map<String, ClassConditions> conditions;
+
+		CachedEntry(String fingerprint, SpringFactories factories, Map<String, ClassConditions> conditions) {
+			this.fingerprint = fingerprint;
+			this.factories = factories;
+			this.conditions = conditions;
+		}
+
+		JSONObject toJson() throws Exception {
+			JSONObject json = new JSONObject();
+			json.put("fingerprint", this.fingerprint);
+			JSONObject jsonFactories = new JSONObject();
+			for (Map.Entry<String, List<String>> entry : this.factories.getEntries().entrySet()) {
+				jsonFactories.put(entry.getKey(), new JSONArray(entry.getValue()));
+			}
+			json.put("factories", jsonFactories);
+			json.put("localTypes", new JSONArray(this.factories.getLocalTypes()));
+			JSONObject jsonConditions = new JSONObject();
+			for (Map.Entry<String, ClassConditions> entry : this.conditions.entrySet()) {
+				jsonConditions.put(entry.getKey(), entry.getValue().toJson());
+			}
+			json.put("conditions", jsonConditions);
+			return json;
+		}
+
+		static CachedEntry fromJson(File source, JSONObject json) throws Exception {
+			Map<String, List<String>> factories = new LinkedHashMap<>();
+			JSONObject jsonFactories = json.getJSONObject("factories");
+			for (Iterator<?> keys = jsonFactories.keys(); keys.hasNext();) {
+				String key = (String) keys.next();
+				factories.put(key, Collections.unmodifiableList(toList(jsonFactories.getJSONArray(key))));
+			}
+			Set<String> localTypes = new TreeSet<>(toList(json.getJSONArray("localTypes")));
+			Map<String, ClassConditions> conditions = new TreeMap<>();
+			JSONObject jsonConditions = json.getJSONObject("conditions");
+			for (Iterator<?> keys = jsonConditions.keys(); keys.hasNext();) {
+				String key = (String) keys.next();
+				conditions.put(key, ClassConditions.fromJson(jsonConditions.getJSONObject(key)));
+			}
+			return new CachedEntry(json.getString("fingerprint"),
+					new SpringFactories(source, Collections.unmodifiableMap(factories), localTypes), conditions);
+		}
+
+		private static List<String> toList(JSONArray array) throws Exception {
+			List<String> list = new ArrayList<>();
+			for (int i = 0; i < array.length(); i++) {
+				list.add(array.getString(i));
+			}
+			return list;
+		}
+
+	}
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic.Kind;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+
+/**
+ * Reads the class conditions of auto-configurations ({@code ConditionalOnClass} and
+ * {@code ConditionalOnMissingClass}, both the class and the {@code name} forms) straight
+ * from the class files on the classpath. Nested {@code Configuration} classes are read
+ * too, as their conditions decide whether they are used independently of the enclosing
+ * class. A class file that cannot be parsed, for example one too recent for the ASM
+ * version in use, is reported and treated as having no conditions so its type is kept.
+ *
+ * @author Andy Clement
+ */
+class ConditionEvaluator implements Closeable {
+
+	private static final String CONDITIONAL_ON_CLASS = "Lorg/springframework/boot/autoconfigure/condition/ConditionalOnClass;";
+
+	private static final String CONDITIONAL_ON_MISSING_CLASS = "Lorg/springframework/boot/autoconfigure/condition/ConditionalOnMissingClass;";
+
+	private static final String CONFIGURATION = "Lorg/springframework/context/annotation/Configuration;";
+
+	private static final int PARSING_OPTIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+	private final List<File> entries;
+
+	private final Messager messager;
+
+	private final Map<File, JarFile> jars = new HashMap<>();
+
+	ConditionEvaluator(List<File> entries) {
+		this(entries, null);
+	}
+
+	ConditionEvaluator(List<File> entries, Messager messager) {
+		this.entries = entries;
+		this.messager = messager;
+	}
+
+	/**
+	 * Read the conditions of a type.
+	 * @param entry the classpath entry expected to contain the type, may be {@code null}
+	 * @param typename the type
+	 * @return the conditions, {@link ClassConditions#UNKNOWN} if the class file could not
+	 * be parsed, or {@code null} if no class file for the type was found
+	 */
+	ClassConditions read(File entry, String typename) {
+		String classFileName = SpringFactoriesReader.toClassFileName(typename);
+		if (entry != null) {
+			byte[] bytes = readClassFile(entry, classFileName);
+			if (bytes != null) {
+				return read(entry, classFileName, bytes);
+			}
+		}
+		for (File candidate : this.entries) {
+			byte[] bytes = readClassFile(candidate, classFileName);
+			if (bytes != null) {
+				return read(candidate, classFileName, bytes);
+			}
+		}
+		return null;
+	}
+
+	private ClassConditions read(File entry, String classFileName, byte[] bytes) {
+		ConditionsVisitor visitor = parse(entry, classFileName, bytes);
+		return (visitor != null) ? toConditions(entry, visitor) : ClassConditions.UNKNOWN;
+	}
+
+	private ClassConditions toConditions(File entry, ConditionsVisitor visitor) {
+		Map<String, ClassConditions> nestedConfigurations = new LinkedHashMap<>();
+		for (String nested : visitor.nestedClasses) {
+			byte[] nestedBytes = readClassFile(entry, nested + ".class");
+			if (nestedBytes != null) {
+				ConditionsVisitor nestedVisitor = parse(entry, nested + ".class", nestedBytes);
+				if (nestedVisitor != null && nestedVisitor.configuration) {
+					nestedConfigurations.put(nested.replace('/', '.'), toConditions(entry, nestedVisitor));
+				}
+			}
+		}
+		return new ClassConditions(visitor.requiredClasses, visitor.missingClasses, nestedConfigurations);
+	}
+
+	/**
+	 * @return the visitor that parsed the class file, or {@code null} if it could not be
+	 * parsed
+	 */
+	private ConditionsVisitor parse(File entry, String classFileName, byte[] bytes) {
+		ConditionsVisitor visitor = new ConditionsVisitor();
+		try {
+			new ClassReader(bytes).accept(visitor, PARSING_OPTIONS);
+		}
+		catch (RuntimeException ex) {
+			// ASM throws IllegalArgumentException for class file versions it does not know
+			print(Kind.NOTE, "Unable to read the conditions in " + classFileName + " from " + entry
+					+ ", using the compiler's view of the type: " + ex);
+			return null;
+		}
+		return visitor;
+	}
+
+	private byte[] readClassFile(File entry, String classFileName) {
+		try {
+			if (entry.isDirectory()) {
+				File file = new File(entry, classFileName);
+				return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+			}
+			if (!entry.isFile()) {
+				return null;
+			}
+			JarFile jar = this.jars.get(entry);
+			if (jar == null) {
+				jar = new JarFile(entry);
+				this.jars.put(entry, jar);
+			}
+			ZipEntry zipEntry = jar.getEntry(classFileName);
+			if (zipEntry == null) {
+				return null;
+			}
+			try (InputStream is = jar.getInputStream(zipEntry)) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = is.read(buffer)) != -1) {
+					bytes.write(buffer, 0, read);
+				}
+				return bytes.toByteArray();
+			}
+		}
+		catch (IOException ex) {
+			print(Kind.WARNING, "Unable to read " + classFileName + " from " + entry + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private void print(Kind kind, String message) {
+		if (this.messager != null) {
+			this.messager.printMessage(kind, message);
+		}
+	}
+
+	@Override
+	public void close() {
+		for (JarFile jar : this.jars.values()) {
+			try {
+				jar.close();
+			}
+			catch (IOException ex) {
+				// Ignore
+			}
+		}
+		this.jars.clear();
+	}
+
+	private static class ConditionsVisitor extends ClassVisitor {
+
+		private final List<String> requiredClasses = new ArrayList<>();
+
+		private final List<String> missingClasses = new ArrayList<>();
+
+		private final List<String> nestedClasses = new ArrayList<>();
+
+		private String name;
+
+		private boolean configuration;
+
+		ConditionsVisitor() {
+			super(Opcodes.ASM7);
+		}
+
+		@Override
+		public void visit(int version, int access, String name, String signature, String superName,
+				String[] interfaces) {
+			this.name = name;
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+			if (CONDITIONAL_ON_CLASS.equals(descriptor)) {
+				return new ClassNamesCollector(this.requiredClasses);
+			}
+			if (CONDITIONAL_ON_MISSING_CLASS.equals(descriptor)) {
+				return new ClassNamesCollector(this.missingClasses);
+			}
+			if (CONFIGURATION.equals(descriptor)) {
+				this.configuration = true;
+			}
+			return null;
+		}
+
+		@Override
+		public void visitInnerClass(String name, String outerName, String innerName, int access) {
+			if (this.name.equals(outerName) && innerName != null && (access & Opcodes.ACC_STATIC) != 0) {
+				this.nestedClasses.add(name);
+			}
+		}
+
+	}
+
+	/**
+	 * Collects the class names from the {@code value} and {@code name} attributes of a
+	 * condition, whether given as classes or as strings. Names are canonical, the form
+	 * javac resolves, so a nested class is {@code a.B.Inner} rather than
+	 * {@code a.B$Inner}.
+	 */
+	private static class ClassNamesCollector extends AnnotationVisitor {
+
+		private final List<String> names;
+
+		ClassNamesCollector(List<String> names) {
+			super(Opcodes.ASM7);
+			this.names = names;
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name) {
+			return ("value".equals(name) || "name".equals(name)) ? this : null;
+		}
+
+		@Override
+		public void visit(String name, Object value) {
+			if (value instanceof Type) {
+				this.names.add(((Type) value).getClassName().replace('$', '.'));
+			}
+			else if (value instanceof String) {
+				this.names.add(((String) value).replace('$', '.'));
+			}
+		}
+
+	}
+
+	/**
+	 * The class conditions of a type and of its nested configuration classes.
+	 */
+	static class ClassConditions {
+
+		/**
+		 * The conditions of a class file that could not be parsed, none so that the type
+		 * is kept.
+		 */
+		static final ClassConditions UNKNOWN = new ClassConditions(Collections.emptyList(), Collections.emptyList(),
+				Collections.emptyMap());
+
+		private final List<String> requiredClasses;
+
+		private final List<String> missingClasses;
+
+		private final Map<String, ClassConditions> nestedConfigurations;
+
+		ClassConditions(List<String> requiredClasses, List<String> missingClasses,
+				Map<String, ClassConditions> nestedConfigurations) {
+			this.requiredClasses = Collections.unmodifiableList(requiredClasses);
+			this.missingClasses = Collections.unmodifiableList(missingClasses);
+			this.nestedConfigurations = Collections.unmodifiableMap(nestedConfigurations);
+		}
+
+		/**
+		 * @return the canonical names of the types that {@code ConditionalOnClass}
+		 * requires
+		 */
+		List<String> getRequiredClasses() {
+			return this.requiredClasses;
+		}
+
+		/**
+		 * @return the canonical names of the types that
+		 * {@code ConditionalOnMissingClass} requires to be absent
+		 */
+		List<String> getMissingClasses() {
+			return this.missingClasses;
+		}
+
+		/**
+		 * @return the conditions of the nested configuration classes, keyed by binary
+		 * name
+		 */
+		Map<String, ClassConditions> getNestedConfigurations() {
+			return this.nestedConfigurations;
+		}
+
+		JSONObject toJson() throws Exception {
+			JSONObject json = new JSONObject();
+			json.put("onClass", new JSONArray(this.requiredClasses));
+			json.put("onMissingClass", new JSONArray(this.missingClasses));
+			JSONObject nested = new JSONObject();
+			for (Map.Entry<String, ClassConditions> entry : this.nestedConfigurations.entrySet()) {
+				nested.put(entry.getKey(), entry.getValue().toJson());
+			}
+			json.put("nested", nested);
+			return json;
+		}
+
+		static ClassConditions fromJson(JSONObject json) throws Exception {
+			Map<String, ClassConditions> nestedConfigurations = new LinkedHashMap<>();
+			JSONObject nested = json.getJSONObject("nested");
+			for (Iterator<?> keys = nested.keys(); keys.hasNext();) {
+				String key = (String) keys.next();
+				nestedConfigurations.put(key, fromJson(nested.getJSONObject(key)));
+			}
+			return new ClassConditions(toList(json.getJSONArray("onClass")),
+					toList(json.getJSONArray("onMissingClass")), nestedConfigurations);
+		}
+
+		private static List<String> toList(JSONArray array) throws Exception {
+			List<String> list = new ArrayList<>();
+			for (int i = 0; i < array.length(); i++) {
+				list.add(array.getString(i));
+			}
+			return list;
+		}
+
+	}
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic.Kind;
+
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONObject;
+import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Sidecar to reflect.json that records which descriptors each source type contributed,
+ * and which came from the classpath (defaults and spring.factories). On an incremental
+ * build only some sources are recompiled; the contributions of the others are taken from
+ * this index rather than being lost, and the classpath contributions are reused as long
+ * as the classpath is unchanged. Which of the classpath contributions are
+ * auto-configurations, and which spring.factories keys listed them, is recorded too so
+ * that they can still be pruned when reused. As a type defined by the sources satisfies a
+ * condition just as well as one on the classpath, the type availability answers the
+ * sources could change are recorded and must still hold for the classpath contributions
+ * to be reused.
+ *
+ * @author Andy Clement
+ */
+class ContributionIndex {
+
+	static final String INDEX_FILE = "reflect-index.json";
+
+	private static final int VERSION = 3;
+
+	private final String classpathFingerprint;
+
+	private final ReflectionDescriptor classpathContributions;
+
+	private final Map<String, ReflectionDescriptor> sourceContributions;
+
+	private final Map<String, Set<String>> autoConfigurationKeys;
+
+	private final Map<String, String> autoConfigurationOwners;
+
+	private final Map<String, Boolean> sourceDependentAnswers;
+
+	ContributionIndex(String classpathFingerprint, ReflectionDescriptor classpathContributions,
+			Map<String, ReflectionDescriptor> sourceContributions) {
+		this(classpathFingerprint, classpathContributions, sourceContributions, Collections.emptyMap(),
+				Collections.emptyMap(), Collections.emptyMap());
+	}
+
+	ContributionIndex(String classpathFingerprint, ReflectionDescriptor classpathContributions,
+			Map<String, ReflectionDescriptor> sourceContributions, Map<String, Set<String>> autoConfigurationKeys,
+			Map<String, String> autoConfigurationOwners, Map<String, Boolean> sourceDependentAnswers) {
+		this.classpathFingerprint = classpathFingerprint;
+		this.classpathContributions = classpathContributions;
+		this.sourceContributions = new TreeMap<>(sourceContributions);
+		this.autoConfigurationKeys = new TreeMap<>(autoConfigurationKeys);
+		this.autoConfigurationOwners = new TreeMap<>(autoConfigurationOwners);
+		this.sourceDependentAnswers = new TreeMap<>(sourceDependentAnswers);
+	}
+
+	String getClasspathFingerprint() {
+		return this.classpathFingerprint;
+	}
+
+	ReflectionDescriptor getClasspathContributions() {
+		return this.classpathContributions;
+	}
+
+	/**
+	 * @return descriptors contributed by each source type, keyed by the qualified name of
+	 * the top level source type
+	 */
+	Map<String, ReflectionDescriptor> getSourceContributions() {
+		return this.sourceContributions;
+	}
+
+	/**
+	 * @return the spring.factories keys that listed each auto-configuration
+	 */
+	Map<String, Set<String>> getAutoConfigurationKeys() {
+		return this.autoConfigurationKeys;
+	}
+
+	/**
+	 * @return the auto-configuration each descriptor was registered for, itself or the
+	 * enclosing auto-configuration of a nested configuration
+	 */
+	Map<String, String> getAutoConfigurationOwners() {
+		return this.autoConfigurationOwners;
+	}
+
+	/**
+	 * @return the type availability answers given during the classpath analysis that a
+	 * change to the sources could alter
+	 */
+	Map<String, Boolean> getSourceDependentAnswers() {
+		return this.sourceDependentAnswers;
+	}
+
+	/**
+	 * Load an index.
+	 * @param file the index file
+	 * @param messager reports an unreadable index
+	 * @return the index, or {@code null} if there is no readable index
+	 */
+	static ContributionIndex load(File file, Messager messager) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+			if (json.optInt("version") != VERSION) {
+				return null;
+			}
+			Map<String, ReflectionDescriptor> sources = new TreeMap<>();
+			JSONObject jsonSources = json.getJSONObject("sources");
+			for (Iterator<?> keys = jsonSources.keys(); keys.hasNext();) {
+				String sourceType = (String) keys.next();
+				sources.put(sourceType, JsonMarshaller.read(jsonSources.getJSONArray(sourceType)));
+			}
+			Map<String, Set<String>> autoConfigurationKeys = new TreeMap<>();
+			JSONObject jsonKeys = json.getJSONObject("autoConfigurationKeys");
+			for (Iterator<?> keys = jsonKeys.keys(); keys.hasNext();) {
+				String type = (String) keys.next();
+				JSONArray array = jsonKeys.getJSONArray(type);
+				Set<String> factoriesKeys = new LinkedHashSet<>();
+				for (int i = 0; i < array.length(); i++) {
+					factoriesKeys.add(array.getString(i));
+				}
+				autoConfigurationKeys.put(type, factoriesKeys);
+			}
+			Map<String, String> autoConfigurationOwners = new TreeMap<>();
+			JSONObject jsonOwners = json.getJSONObject("autoConfigurationOwners");
+			for (Iterator<?> keys = jsonOwners.keys(); keys.hasNext();) {
+				String type = (String) keys.next();
+				autoConfigurationOwners.put(type, jsonOwners.getString(type));
+			}
+			Map<String, Boolean> sourceDependentAnswers = new TreeMap<>();
+			JSONObject jsonAnswers = json.getJSONObject("sourceDependentAnswers");
+			for (Iterator<?> keys = jsonAnswers.keys(); keys.hasNext();) {
+				String type = (String) keys.next();
+				sourceDependentAnswers.put(type, jsonAnswers.getBoolean(type));
+			}
+			return new ContributionIndex(json.getString("classpathFingerprint"),
+					JsonMarshaller.read(json.getJSONArray("classpath")), sources, autoConfigurationKeys,
+					autoConfigurationOwners, sourceDependentAnswers);
+		}
+		catch (Exception ex) {
+			messager.printMessage(Kind.WARNING, "Ignoring unreadable index " + file + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	void save(File file) throws IOException {
+		JSONObject json = new JSONObject();
+		try {
+			json.put("version", VERSION);
+			json.put("classpathFingerprint", this.classpathFingerprint);
+			json.put("classpath", JsonMarshaller.toJsonArray(this.classpathContributions));
+			JSONObject jsonSources = new JSONObject();
+			for (Map.Entry<String, ReflectionDescriptor> entry : this.sourceContributions.entrySet()) {
+				jsonSources.put(entry.getKey(), JsonMarshaller.toJsonArray(entry.getValue()));
+			}
+			json.put("sources", jsonSources);
+			JSONObject jsonKeys = new JSONObject();
+			for (Map.Entry<String, Set<String>> entry : this.autoConfigurationKeys.entrySet()) {
+				jsonKeys.put(entry.getKey(), new JSONArray(entry.getValue()));
+			}
+			json.put("autoConfigurationKeys", jsonKeys);
+			json.put("autoConfigurationOwners", new JSONObject(this.autoConfigurationOwners));
+			json.put("sourceDependentAnswers", new JSONObject(this.sourceDependentAnswers));
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Unable to build contribution index", ex);
+		}
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.springframework.boot.graal.reflectconfig.BinaryMarshaller;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * The descriptors every Spring Boot app needs. {@code reflect.defaults.json} is the
+ * source of truth; when the processor is built it is also compiled (by {@link #main})
+ * into the binary {@code reflect.defaults.bin}, which is what gets loaded, as it is much
+ * cheaper to read on every javac invocation. The JSON is read if the binary form is
+ * missing or unreadable.
+ *
+ * @author Andy Clement
+ */
+final class DefaultsSnapshot {
+
+	static final String DEFAULTS_JSON = "reflect.defaults.json";
+
+	static final String DEFAULTS_BINARY = "reflect.defaults.bin";
+
+	private DefaultsSnapshot() {
+	}
+
+	static ReflectionDescriptor load() throws IOException {
+		return load(DefaultsSnapshot.class.getClassLoader());
+	}
+
+	static ReflectionDescriptor load(ClassLoader classLoader) throws IOException {
+		try (InputStream binary = classLoader.getResourceAsStream(DEFAULTS_BINARY)) {
+			if (binary != null) {
+				return BinaryMarshaller.read(binary);
+			}
+		}
+		catch (IOException ex) {
+			System.out.println("Unable to read " + DEFAULTS_BINARY + ", falling back to " + DEFAULTS_JSON + ": "
+					+ ex.getMessage());
+		}
+		try (InputStream json = classLoader.getResourceAsStream(DEFAULTS_JSON)) {
+			return ReflectStore.readMetadata(json);
+		}
+	}
+
+	/**
+	 * Compile the JSON defaults into their binary form, run as part of the build.
+	 * @param args the JSON file to read and the binary file to write
+	 * @throws IOException if either file cannot be accessed
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("Usage: DefaultsSnapshot <defaults.json> <defaults.bin>");
+			System.exit(1);
+		}
+		ReflectionDescriptor defaults;
+		try (InputStream json = new FileInputStream(args[0])) {
+			defaults = ReflectStore.readMetadata(json);
+		}
+		try (OutputStream binary = new FileOutputStream(args[1])) {
+			new BinaryMarshaller().write(defaults, binary);
+		}
+		System.out.println("Wrote " + defaults.getClassDescriptors().size() + " default descriptors to " + args[1]);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Knows which of a set of target annotations each annotation type is meta-annotated
+ * with, directly or through other annotations (for example {@code SpringBootApplication}
+ * is a {@code Configuration} through {@code SpringBootConfiguration}). The answer for
+ * each annotation type is computed once and shared by every element carrying it, so the
+ * cost grows with the number of distinct annotation types rather than with the number of
+ * annotated elements.
+ *
+ * @author Andy Clement
+ */
+class MetaAnnotationGraph {
+
+	private final Set<String> targets;
+
+	private final Map<String, Map<String, AnnotationMirror>> metaAnnotations = new HashMap<>();
+
+	/**
+	 * Create a new graph.
+	 * @param targets the qualified names of the annotations of interest
+	 */
+	MetaAnnotationGraph(Set<String> targets) {
+		this.targets = targets;
+	}
+
+	/**
+	 * Return the target annotations the annotation type is meta-annotated with.
+	 * @param annotationType the annotation type
+	 * @return the target annotations, keyed by qualified name, each with the mirror
+	 * that declares it in the meta-annotation hierarchy
+	 */
+	Map<String, AnnotationMirror> getMetaAnnotations(TypeElement annotationType) {
+		String name = annotationType.getQualifiedName().toString();
+		Map<String, AnnotationMirror> result = this.metaAnnotations.get(name);
+		if (result != null) {
+			return result;
+		}
+		result = new LinkedHashMap<>();
+		Set<String> visited = new HashSet<>();
+		visited.add(name);
+		Deque<TypeElement> queue = new ArrayDeque<>();
+		queue.add(annotationType);
+		while (!queue.isEmpty()) {
+			for (AnnotationMirror mirror : queue.poll().getAnnotationMirrors()) {
+				TypeElement metaType = (TypeElement) mirror.getAnnotationType().asElement();
+				String metaName = metaType.getQualifiedName().toString();
+				if (metaName.startsWith("java.lang.annotation.") || !visited.add(metaName)) {
+					continue;
+				}
+				if (this.targets.contains(metaName)) {
+					result.putIfAbsent(metaName, mirror);
+				}
+				Map<String, AnnotationMirror> known = this.metaAnnotations.get(metaName);
+				if (known != null) {
+					known.forEach(result::putIfAbsent);
+				}
+				else {
+					queue.add(metaType);
+				}
+			}
+		}
+		result = result.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(result);
+		this.metaAnnotations.put(name, result);
+		return result;
+	}
+
+}
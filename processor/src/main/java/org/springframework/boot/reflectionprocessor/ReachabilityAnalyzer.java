@@ -0,0 +1,227 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+
+/**
+ * Works out which types a Spring Boot application can reach from its sources, the way
+ * Spring processes configuration classes: through their annotations and
+ * meta-annotations, {@code @Import} and {@code @ImportAutoConfiguration}, the return
+ * types of {@code @Bean} methods, member classes and superclasses. An annotation type
+ * that is reached enables the spring.factories entries listed under its name (as
+ * {@code @EnableAutoConfiguration} does), less the types excluded through the
+ * {@code exclude} and {@code excludeName} attributes. Every source is a root, component
+ * scanning may pick up any of them.
+ *
+ * @author Andy Clement
+ */
+class ReachabilityAnalyzer {
+
+	static final String ENABLE_AUTO_CONFIGURATION = "org.springframework.boot.autoconfigure.EnableAutoConfiguration";
+
+	private static final String IMPORT = "org.springframework.context.annotation.Import";
+
+	private static final String IMPORT_AUTO_CONFIGURATION = "org.springframework.boot.autoconfigure.ImportAutoConfiguration";
+
+	private static final String BEAN = "org.springframework.context.annotation.Bean";
+
+	private static final Set<String> EXCLUDING_ANNOTATIONS = new HashSet<>(Arrays.asList(ENABLE_AUTO_CONFIGURATION,
+			"org.springframework.boot.autoconfigure.SpringBootApplication", IMPORT_AUTO_CONFIGURATION));
+
+	private final Elements elements;
+
+	private final Map<String, ? extends Collection<String>> candidatesByKey;
+
+	private final Set<String> reachable = new HashSet<>();
+
+	private final Set<String> enabledKeys = new HashSet<>();
+
+	private final Map<String, String> excludedBy = new HashMap<>();
+
+	private final Deque<TypeElement> queue = new ArrayDeque<>();
+
+	/**
+	 * Create a new analyzer.
+	 * @param elements the element utilities
+	 * @param candidatesByKey the spring.factories entries, keyed by the annotation type
+	 * that enables them
+	 */
+	ReachabilityAnalyzer(Elements elements, Map<String, ? extends Collection<String>> candidatesByKey) {
+		this.elements = elements;
+		this.candidatesByKey = candidatesByKey;
+	}
+
+	/**
+	 * Find everything reachable from the roots.
+	 * @param roots the source types
+	 */
+	void analyze(Collection<TypeElement> roots) {
+		roots.forEach(this::reach);
+		do {
+			while (!this.queue.isEmpty()) {
+				visit(this.queue.poll());
+			}
+			// Exclusions are only known once the types enabling the entries are visited
+			this.candidatesByKey.forEach((key, candidates) -> {
+				if (this.reachable.contains(key) && this.enabledKeys.add(key)) {
+					for (String candidate : candidates) {
+						if (!this.excludedBy.containsKey(candidate)) {
+							reach(candidate);
+						}
+					}
+				}
+			});
+		}
+		while (!this.queue.isEmpty());
+	}
+
+	/**
+	 * @param typename the binary name of a type
+	 * @return whether the application can reach the type
+	 */
+	boolean isReachable(String typename) {
+		return this.reachable.contains(typename);
+	}
+
+	/**
+	 * @return whether any reachable type enables auto-configuration
+	 */
+	boolean isAutoConfigurationEnabled() {
+		return this.reachable.contains(ENABLE_AUTO_CONFIGURATION);
+	}
+
+	/**
+	 * @param typename the binary name of a type
+	 * @return the type whose annotation excludes it, or {@code null} if it is not
+	 * excluded
+	 */
+	String getExcludedBy(String typename) {
+		return this.excludedBy.get(typename);
+	}
+
+	private void visit(TypeElement type) {
+		for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+			String annotationName = annotationType.getQualifiedName().toString();
+			if (IMPORT.equals(annotationName) || IMPORT_AUTO_CONFIGURATION.equals(annotationName)) {
+				getClassValues(annotation, "value").forEach(this::reach);
+				getClassValues(annotation, "classes").forEach(this::reach);
+			}
+			if (EXCLUDING_ANNOTATIONS.contains(annotationName)) {
+				String excluding = this.elements.getBinaryName(type).toString();
+				for (TypeElement excluded : getClassValues(annotation, "exclude")) {
+					this.excludedBy.putIfAbsent(this.elements.getBinaryName(excluded).toString(), excluding);
+				}
+				for (AnnotationValue excludedName : getValues(annotation, "excludeName")) {
+					this.excludedBy.putIfAbsent((String) excludedName.getValue(), excluding);
+				}
+			}
+			reach(annotationType);
+		}
+		for (Element enclosed : type.getEnclosedElements()) {
+			if (enclosed.getKind() == ElementKind.METHOD && hasAnnotation(enclosed, BEAN)) {
+				reach(((ExecutableElement) enclosed).getReturnType());
+			}
+			else if ((enclosed.getKind().isClass() || enclosed.getKind().isInterface())
+					&& enclosed.getModifiers().contains(Modifier.STATIC)) {
+				reach((TypeElement) enclosed);
+			}
+		}
+		reach(type.getSuperclass());
+	}
+
+	private void reach(TypeMirror type) {
+		if (type instanceof DeclaredType) {
+			reach((TypeElement) ((DeclaredType) type).asElement());
+		}
+	}
+
+	private void reach(TypeElement type) {
+		String name = this.elements.getBinaryName(type).toString();
+		if (!name.startsWith("java.") && this.reachable.add(name)) {
+			this.queue.add(type);
+		}
+	}
+
+	private void reach(String typename) {
+		if (this.reachable.add(typename)) {
+			TypeElement type = this.elements.getTypeElement(typename.replace('$', '.'));
+			if (type != null) {
+				this.queue.add(type);
+			}
+		}
+	}
+
+	private List<TypeElement> getClassValues(AnnotationMirror annotation, String attribute) {
+		List<? extends AnnotationValue> values = getValues(annotation, attribute);
+		if (values.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<TypeElement> types = new ArrayList<>();
+		for (AnnotationValue value : values) {
+			if (value.getValue() instanceof DeclaredType) {
+				types.add((TypeElement) ((DeclaredType) value.getValue()).asElement());
+			}
+		}
+		return types;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<? extends AnnotationValue> getValues(AnnotationMirror annotation, String attribute) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues()
+				.entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+				Object value = entry.getValue().getValue();
+				return (value instanceof List) ? (List<? extends AnnotationValue>) value
+						: Collections.singletonList(entry.getValue());
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	private static boolean hasAnnotation(Element element, String annotationType) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Reads the {@code META-INF/reflect.json} fragments that libraries on the compilation
+ * classpath ship and merges them into one descriptor. Like the
+ * {@link SpringFactoriesReader} each entry is read independently, in parallel mode the
+ * entries are spread over a fork/join pool and the fragments merged pairwise as the
+ * tasks join. Fragments are merged in classpath order in either mode.
+ *
+ * @author Andy Clement
+ */
+class ReflectFragmentReader {
+
+	private final boolean parallel;
+
+	private final File classOutput;
+
+	private int fragmentCount;
+
+	/**
+	 * Create a new reader.
+	 * @param parallel whether to read the entries in parallel
+	 * @param classOutput the class output directory of the module being compiled, it
+	 * holds the reflect.json written by the previous build so it is skipped. May be null.
+	 */
+	ReflectFragmentReader(boolean parallel, File classOutput) {
+		this.parallel = parallel;
+		this.classOutput = classOutput;
+	}
+
+	/**
+	 * Read and merge the fragments from the supplied classpath entries.
+	 * @param entries the classpath entries (jars or directories)
+	 * @return the merged fragments, empty if there are none
+	 */
+	ReflectionDescriptor read(List<File> entries) {
+		if (entries.isEmpty()) {
+			return new ReflectionDescriptor();
+		}
+		if (this.parallel && entries.size() > 1) {
+			return ForkJoinPool.commonPool().invoke(new ReadTask(entries, 0, entries.size()));
+		}
+		ReflectionDescriptor result = new ReflectionDescriptor();
+		for (File entry : entries) {
+			ReflectionDescriptor fragment = read(entry);
+			if (fragment == null) {
+				continue;
+			}
+			if (result.isEmpty()) {
+				result = fragment;
+			}
+			else {
+				result.merge(fragment);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return how many of the entries read so far contained a fragment
+	 */
+	synchronized int getFragmentCount() {
+		return this.fragmentCount;
+	}
+
+	/**
+	 * Read the fragment from a single classpath entry.
+	 * @param entry the jar or directory
+	 * @return the fragment, null if the entry does not contain one or it is not readable
+	 */
+	ReflectionDescriptor read(File entry) {
+		if (entry.isDirectory() && isClassOutput(entry)) {
+			return null;
+		}
+		try {
+			ReflectionDescriptor fragment = null;
+			if (entry.isDirectory()) {
+				File file = new File(entry, ReflectStore.METADATA_PATH);
+				if (file.isFile()) {
+					try (InputStream is = new FileInputStream(file)) {
+						fragment = JsonMarshaller.read(is);
+					}
+				}
+			}
+			else if (entry.isFile()) {
+				try (JarFile jar = new JarFile(entry)) {
+					ZipEntry zipEntry = jar.getEntry(ReflectStore.METADATA_PATH);
+					if (zipEntry != null) {
+						try (InputStream is = jar.getInputStream(zipEntry)) {
+							fragment = JsonMarshaller.read(is);
+						}
+					}
+				}
+			}
+			if (fragment != null) {
+				synchronized (this) {
+					this.fragmentCount++;
+				}
+			}
+			return fragment;
+		}
+		catch (Exception ex) {
+			System.out.println("Unable to read " + ReflectStore.METADATA_PATH + " from " + entry + ": " + ex.getMessage());
+			return null;
+		}
+	}
+
+	private boolean isClassOutput(File entry) {
+		try {
+			return this.classOutput != null
+					&& entry.getCanonicalFile().equals(this.classOutput.getCanonicalFile());
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Splits the range of entries in half until single entries remain, each pair of
+	 * results is merged with the earlier entries first.
+	 */
+	@SuppressWarnings("serial")
+	private class ReadTask extends RecursiveTask<ReflectionDescriptor> {
+
+		private final List<File> entries;
+
+		private final int from;
+
+		private final int to;
+
+		ReadTask(List<File> entries, int from, int to) {
+			this.entries = entries;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ReflectionDescriptor compute() {
+			if (this.to - this.from == 1) {
+				ReflectionDescriptor fragment = read(this.entries.get(this.from));
+				return (fragment != null) ? fragment : new ReflectionDescriptor();
+			}
+			int middle = (this.from + this.to) >>> 1;
+			ReadTask left = new ReadTask(this.entries, this.from, middle);
+			left.fork();
+			ReflectionDescriptor right = new ReadTask(this.entries, middle, this.to).compute();
+			ReflectionDescriptor result = left.join();
+			if (result.isEmpty()) {
+				return right;
+			}
+			result.merge(right);
+			return result;
+		}
+
+	}
+
+}
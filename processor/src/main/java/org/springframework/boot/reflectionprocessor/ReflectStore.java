@@ -16,9 +16,11 @@
 
 package org.springframework.boot.reflectionprocessor;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.tools.FileObject;
@@ -40,6 +42,8 @@ public class ReflectStore {
 
 	private static final String CLASSES_FOLDER = "classes";
 
+	private static final String WORKING_FOLDER = "graal-processor";
+
 	private final ProcessingEnvironment environment;
 
 	public ReflectStore(ProcessingEnvironment environment) {
@@ -85,6 +89,38 @@ public class ReflectStore {
 		}
 	}
 
+	/**
+	 * Return a directory the processor can keep state in between builds. It sits next to
+	 * (not inside) the class output folder, so nothing in it ends up in the packaged
+	 * artifact. For a class output of {@code target/classes} this is
+	 * {@code target/graal-processor/classes}.
+	 * @return the working directory, or {@code null} if the class output location is not
+	 * on the file system
+	 */
+	public File getWorkingDirectory() {
+		File classOutput = getClassOutputDirectory();
+		if (classOutput == null) {
+			return null;
+		}
+		return new File(new File(classOutput.getParentFile(), WORKING_FOLDER), classOutput.getName());
+	}
+
+	/**
+	 * @return the class output directory, or {@code null} if it is not on the file system
+	 */
+	public File getClassOutputDirectory() {
+		try {
+			URI uri = getMetadataResource().toUri();
+			if (!"file".equals(uri.getScheme())) {
+				return null;
+			}
+			return new File(uri).getParentFile().getParentFile();
+		}
+		catch (Exception ex) {
+			return null;
+		}
+	}
+
 	private FileObject getMetadataResource() throws IOException {
 		return this.environment.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
 				METADATA_PATH);
@@ -17,20 +17,21 @@
 package org.springframework.boot.reflectionprocessor;
 
 import java.io.File;
-import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.annotation.processing.Messager;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -38,13 +39,20 @@ import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
 import javax.tools.Diagnostic.Kind;
 
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
 import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
 import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+import org.springframework.boot.reflectionprocessor.ConditionEvaluator.ClassConditions;
+import org.springframework.boot.reflectionprocessor.SpringFactoriesReader.SpringFactories;
 
 /**
  * Used by {@link ReflectiveAccessAnnotationProcessor} to collect
@@ -54,9 +62,7 @@ import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
  */
 public class ReflectionInfoCollector {
 
-	private final static String DEFAULTS = "reflect.defaults.json";
-
-	private final List<ClassDescriptor> classDescriptors = new ArrayList<>();
+	private final Map<String, ClassDescriptor> classDescriptors = new LinkedHashMap<>(); // keyed by type name, in insertion order
 
 	private final ProcessingEnvironment processingEnvironment;
 
@@ -66,13 +72,43 @@ public class ReflectionInfoCollector {
 
 	private final Set<String> processedSourceTypes = new HashSet<>();
 
+	// Canonical names of every type defined by the sources, nested types included
+	private final Set<String> sourceTypeNames = new HashSet<>();
+
 	private Messager messager;
 
+	private ClasspathCache classpathCache;
+
+	private TypeAvailabilityOracle typeAvailability;
+
+	private ConditionEvaluator conditionEvaluator;
+
+	private final ReflectionDescriptor classpathContributions = new ReflectionDescriptor();
+
+	private final Map<String, ReflectionDescriptor> sourceContributions = new TreeMap<>();
+
+	// Where descriptors are recorded as they are merged, the classpath unless a source is being processed
+	private ReflectionDescriptor currentContributions = classpathContributions;
+
+	private String classpathFingerprint;
+
+	private ContributionIndex previousIndex;
+
+	private Map<String, ReflectionDescriptor> carriedOverContributions;
+
+	// The spring.factories keys that listed each auto-configuration registered from the classpath
+	private final Map<String, Set<String>> autoConfigurationKeys = new HashMap<>();
+
+	// Descriptors registered only for an auto-configuration, mapped to that auto-configuration
+	private final Map<String, String> autoConfigurationOwners = new HashMap<>();
+
 	public ReflectionInfoCollector(ProcessingEnvironment processingEnvironment, ReflectionDescriptor previousMetadata) {
 		this.processingEnvironment = processingEnvironment;
 		messager = processingEnvironment.getMessager();
 		this.previousMetadata = previousMetadata;
 		this.typeUtils = new TypeUtils(processingEnvironment);
+		this.typeAvailability = new TypeAvailabilityOracle(processingEnvironment.getElementUtils(), null,
+				this.sourceTypeNames);
 	}
 
 	public void processing(RoundEnvironment roundEnv) {
@@ -84,27 +120,153 @@ public class ReflectionInfoCollector {
 	private void markAsProcessed(Element element) {
 		if (element instanceof TypeElement) {
 			this.processedSourceTypes.add(this.typeUtils.getQualifiedName(element));
+			addSourceTypeNames((TypeElement) element);
+		}
+	}
+
+	private void addSourceTypeNames(TypeElement type) {
+		this.sourceTypeNames.add(type.getQualifiedName().toString());
+		for (Element enclosed : type.getEnclosedElements()) {
+			if (enclosed instanceof TypeElement) {
+				addSourceTypeNames((TypeElement) enclosed);
+			}
 		}
 	}
 
 	public ReflectionDescriptor getMetadata() {
 		ReflectionDescriptor metadata = new ReflectionDescriptor();
-		for (ClassDescriptor cd : this.classDescriptors) {
-			metadata.add(cd);
-		}
-//		if (this.previousMetadata != null) {
-//			List<ClassDescriptor> cds = this.previousMetadata.getClassDescriptors();
-//			for (ClassDescriptor cd : cds) {
-//				if (shouldBeMerged(cd)) {
-//					metadata.add(cd);
-//				}
-//			}
-//		}
+		Map<String, ReflectionDescriptor> carriedOver = getCarriedOverContributions();
+		if (carriedOver.isEmpty()) {
+			for (ClassDescriptor cd : this.classDescriptors.values()) {
+				metadata.add(cd);
+			}
+		}
+		else {
+			// Merge into copies so the collected descriptors are left untouched
+			for (ClassDescriptor cd : this.classDescriptors.values()) {
+				metadata.add(cd.copy());
+			}
+			for (ReflectionDescriptor contribution : carriedOver.values()) {
+				metadata.merge(contribution);
+			}
+		}
+		if ("true".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.PRUNE))) {
+			metadata = pruneUnreachableAutoConfigurations(metadata);
+		}
 		return metadata;
 	}
 
-	private boolean shouldBeMerged(ClassDescriptor cd) {
-		String sourceType = cd.getName(); // TODO map name to sourceType
+	/**
+	 * Remove the auto-configurations the application cannot activate, as determined by
+	 * the {@link ReachabilityAnalyzer}. Only descriptors registered solely because
+	 * spring.factories listed a type under annotation keys are candidates, and nothing
+	 * is pruned unless the sources enable auto-configuration (a library module does not).
+	 */
+	private ReflectionDescriptor pruneUnreachableAutoConfigurations(ReflectionDescriptor metadata) {
+		Elements elements = processingEnvironment.getElementUtils();
+		Map<String, Boolean> annotationKeys = new HashMap<>();
+		Map<String, Set<String>> candidatesByKey = new HashMap<>();
+		this.autoConfigurationKeys.forEach((candidate, keys) -> {
+			for (String key : keys) {
+				if (annotationKeys.computeIfAbsent(key, (k) -> isAnnotationType(elements.getTypeElement(k)))) {
+					candidatesByKey.computeIfAbsent(key, (k) -> new LinkedHashSet<>()).add(candidate);
+				}
+			}
+		});
+		Set<String> sourceTypes = new TreeSet<>(this.processedSourceTypes);
+		sourceTypes.addAll(getCarriedOverContributions().keySet());
+		List<TypeElement> roots = new ArrayList<>();
+		for (String sourceType : sourceTypes) {
+			TypeElement root = elements.getTypeElement(sourceType);
+			if (root != null) {
+				roots.add(root);
+			}
+		}
+		ReachabilityAnalyzer analyzer = new ReachabilityAnalyzer(elements, candidatesByKey);
+		analyzer.analyze(roots);
+		if (!analyzer.isAutoConfigurationEnabled()) {
+			messager.printMessage(Kind.NOTE, "Not pruning auto-configurations, no source enables auto-configuration");
+			return metadata;
+		}
+		Set<String> sourceContributed = new HashSet<>();
+		List<ReflectionDescriptor> contributions = new ArrayList<>(this.sourceContributions.values());
+		contributions.addAll(getCarriedOverContributions().values());
+		for (ReflectionDescriptor contribution : contributions) {
+			for (ClassDescriptor cd : contribution.getClassDescriptors()) {
+				sourceContributed.add(cd.getName());
+			}
+		}
+		ReflectionDescriptor result = new ReflectionDescriptor();
+		StringBuilder report = new StringBuilder();
+		int pruned = 0;
+		for (ClassDescriptor cd : metadata.getClassDescriptors()) {
+			String owner = this.autoConfigurationOwners.get(cd.getName());
+			String reason = null;
+			if (owner != null && !analyzer.isReachable(cd.getName()) && !sourceContributed.contains(cd.getName())) {
+				reason = getPruneReason(owner, analyzer, annotationKeys);
+			}
+			if (reason == null) {
+				result.add(cd);
+			}
+			else {
+				pruned++;
+				report.append("\n  ").append(cd.getName())
+						.append(owner.equals(cd.getName()) ? " " : " is nested in " + owner + ", which ").append(reason);
+			}
+		}
+		messager.printMessage(Kind.NOTE, "Pruned " + pruned + " auto-configurations the sources cannot activate" + report);
+		return result;
+	}
+
+	/**
+	 * @return why the auto-configuration can be pruned, or {@code null} if it cannot be
+	 */
+	private String getPruneReason(String autoConfiguration, ReachabilityAnalyzer analyzer,
+			Map<String, Boolean> annotationKeys) {
+		Set<String> keys = this.autoConfigurationKeys.get(autoConfiguration);
+		if (keys == null || analyzer.isReachable(autoConfiguration)) {
+			return null;
+		}
+		for (String key : keys) {
+			// Entries under other keys (listeners, initializers...) are loaded whatever the sources
+			if (!annotationKeys.getOrDefault(key, false)) {
+				return null;
+			}
+		}
+		String excludedBy = analyzer.getExcludedBy(autoConfiguration);
+		if (excludedBy != null) {
+			return "is excluded by " + excludedBy;
+		}
+		return "is not imported and none of " + keys + " is reachable";
+	}
+
+	private static boolean isAnnotationType(TypeElement type) {
+		return type != null && type.getKind() == ElementKind.ANNOTATION_TYPE;
+	}
+
+	/**
+	 * @return the contributions recorded by the previous build for sources that were
+	 * neither recompiled nor deleted in this build
+	 */
+	private Map<String, ReflectionDescriptor> getCarriedOverContributions() {
+		if (this.carriedOverContributions == null) {
+			this.carriedOverContributions = new TreeMap<>();
+			if (this.previousIndex != null) {
+				this.previousIndex.getSourceContributions().forEach((sourceType, contribution) -> {
+					if (shouldBeMerged(sourceType)) {
+						this.carriedOverContributions.put(sourceType, contribution);
+					}
+				});
+				if (!this.carriedOverContributions.isEmpty()) {
+					messager.printMessage(Kind.NOTE, "Incremental build: carried over descriptors from "
+							+ this.carriedOverContributions.size() + " sources not recompiled");
+				}
+			}
+		}
+		return this.carriedOverContributions;
+	}
+
+	private boolean shouldBeMerged(String sourceType) {
 		return (sourceType != null && !deletedInCurrentBuild(sourceType) && !processedInCurrentBuild(sourceType));
 	}
 
@@ -116,52 +278,185 @@ public class ReflectionInfoCollector {
 		return this.processedSourceTypes.contains(sourceType);
 	}
 
+	TypeAvailabilityOracle getTypeAvailability() {
+		return this.typeAvailability;
+	}
+
 	public ClassDescriptor findClassDescriptor(String typename) {
-		for (ClassDescriptor cd : classDescriptors) {
-			if (cd.getName().equals(typename)) {
-				return cd;
-			}
-		}
-		return null;
+		return this.classDescriptors.get(typename);
 	}
 
 	public ClassDescriptor findClassDescriptor(ClassDescriptor toFind) {
 		return findClassDescriptor(toFind.getName());
 	}
 
+	/**
+	 * Add a class descriptor if there is not already one for the same type.
+	 * @param cd the class descriptor to add
+	 * @return true if it was added, false if a descriptor for that type already exists
+	 */
 	public boolean addClassDescriptor(ClassDescriptor cd) {
-		return this.classDescriptors.add(cd);
+		boolean added = this.classDescriptors.putIfAbsent(cd.getName(), cd) == null;
+		if (added) {
+			this.currentContributions.add(cd.copy());
+		}
+		return added;
 	}
 
 	public void mergeClassDescriptor(ClassDescriptor cd) {
-		ClassDescriptor exists = findClassDescriptor(cd);
-		if (exists == null) {
-			this.classDescriptors.add(cd);
-		} else {
+		this.currentContributions.add(cd.copy());
+		ClassDescriptor exists = this.classDescriptors.putIfAbsent(cd.getName(), cd);
+		if (exists != null) {
 			exists.merge(cd);
 		}
-
 	}
 
 	public void init(String projectCompilationClasspath) {
+		List<File> entries = Collections.emptyList();
+		if (projectCompilationClasspath != null) {
+			entries = SpringFactoriesReader.toEntries(projectCompilationClasspath);
+			this.classpathCache = openClasspathCache(entries);
+			this.typeAvailability = new TypeAvailabilityOracle(processingEnvironment.getElementUtils(),
+					this.classpathCache, this.sourceTypeNames,
+					new ReflectStore(processingEnvironment).getClassOutputDirectory());
+		}
+		this.classpathFingerprint = computeClasspathFingerprint(projectCompilationClasspath, entries);
+		this.previousIndex = loadPreviousIndex();
+		if (this.previousIndex != null && this.previousIndex.getClasspathFingerprint().equals(this.classpathFingerprint)
+				&& sourceDependentAnswersHold(this.previousIndex)) {
+			ReflectionDescriptor reused = this.previousIndex.getClasspathContributions();
+			messager.printMessage(Kind.NOTE, "Classpath unchanged since previous build, reusing "
+					+ reused.getClassDescriptors().size() + " descriptors derived from it");
+			for (ClassDescriptor cd : reused.getClassDescriptors()) {
+				mergeClassDescriptor(cd);
+			}
+			this.autoConfigurationKeys.putAll(this.previousIndex.getAutoConfigurationKeys());
+			this.autoConfigurationOwners.putAll(this.previousIndex.getAutoConfigurationOwners());
+			return;
+		}
 		// Merge the 'defaults' for a boot app from the defaults json file into the
 		// results being collected
 		mergeDefaults();
 		if (projectCompilationClasspath != null) {
-			processSpringFactories(projectCompilationClasspath);
+			mergeClasspathFragments(entries);
+			try (ConditionEvaluator evaluator = new ConditionEvaluator(entries, messager)) {
+				this.conditionEvaluator = evaluator;
+				processSpringFactories(entries);
+			}
+			finally {
+				this.conditionEvaluator = null;
+			}
+		}
+		messager.printMessage(Kind.NOTE, "Classpath analysis: " + this.typeAvailability.getStatistics());
+		if (this.classpathCache != null) {
+			messager.printMessage(Kind.NOTE, "Classpath cache: " + this.classpathCache.getStatistics());
+			try {
+				this.classpathCache.save();
+			}
+			catch (IOException ex) {
+				messager.printMessage(Kind.WARNING, "Unable to save classpath cache: " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Whether the classpath analysis of the previous build still applies to the current
+	 * sources: a type they now define, or no longer define, may change the outcome of a
+	 * condition.
+	 */
+	private boolean sourceDependentAnswersHold(ContributionIndex index) {
+		for (Map.Entry<String, Boolean> answer : index.getSourceDependentAnswers().entrySet()) {
+			if (this.typeAvailability.isAvailable(answer.getKey()) != answer.getValue()) {
+				messager.printMessage(Kind.NOTE, "Availability of " + answer.getKey()
+						+ " changed with the sources, analyzing the classpath again");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The fingerprint covers everything the classpath derived descriptors depend on: the
+	 * classpath entries, the JDK, the processor itself (it supplies the defaults) and
+	 * the processor options.
+	 */
+	private String computeClasspathFingerprint(String projectCompilationClasspath, List<File> entries) {
+		StringBuilder fingerprint = new StringBuilder();
+		fingerprint.append(this.classpathCache != null ? this.classpathCache.getClasspathFingerprint()
+				: ClasspathCache.fingerprint(entries, new HashMap<>()));
+		fingerprint.append('\n').append(projectCompilationClasspath != null);
+		try {
+			File processorLocation = new File(
+					ReflectionInfoCollector.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			fingerprint.append('\n').append(ClasspathCache.fingerprint(processorLocation));
+		}
+		catch (Exception ex) {
+			// Without knowing where the processor came from the classpath results cannot be reused
+			fingerprint.append('\n').append(System.nanoTime());
+		}
+		new TreeMap<>(processingEnvironment.getOptions()).forEach((key, value) -> {
+			if (key.startsWith("org.springframework.boot.reflectiveaccessannotationprocessor.")
+					&& !key.equals(ReflectiveAccessAnnotationProcessor.CLASSPATH)
+					&& !key.equals(ReflectiveAccessAnnotationProcessor.VERBOSE)) {
+				fingerprint.append('\n').append(key).append('=').append(value);
+			}
+		});
+		return ClasspathCache.sha1(fingerprint.toString());
+	}
+
+	private ContributionIndex loadPreviousIndex() {
+		if ("false".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.INCREMENTAL))) {
+			return null;
+		}
+		// Without a previous reflect.json this is a clean build and any index is stale
+		if (this.previousMetadata == null) {
+			return null;
+		}
+		File workingDirectory = new ReflectStore(processingEnvironment).getWorkingDirectory();
+		return (workingDirectory != null) ? ContributionIndex.load(new File(workingDirectory, ContributionIndex.INDEX_FILE), messager) : null;
+	}
+
+	/**
+	 * Save the index of which sources contributed which descriptors, for use by the next
+	 * incremental build. Should be called once processing is over.
+	 */
+	public void saveIndex() {
+		if ("false".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.INCREMENTAL))) {
+			return;
+		}
+		File workingDirectory = new ReflectStore(processingEnvironment).getWorkingDirectory();
+		if (workingDirectory == null) {
+			return;
+		}
+		Map<String, ReflectionDescriptor> sources = new TreeMap<>(getCarriedOverContributions());
+		sources.putAll(this.sourceContributions);
+		try {
+			new ContributionIndex(this.classpathFingerprint, this.classpathContributions, sources,
+					this.autoConfigurationKeys, this.autoConfigurationOwners,
+					this.typeAvailability.getSourceDependentAnswers()).save(new File(workingDirectory, ContributionIndex.INDEX_FILE));
+		}
+		catch (IOException ex) {
+			messager.printMessage(Kind.WARNING, "Unable to save reflect.json index: " + ex.getMessage());
 		}
 	}
 
+	private ClasspathCache openClasspathCache(List<File> entries) {
+		if ("false".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.CACHE))) {
+			return null;
+		}
+		File workingDirectory = new ReflectStore(processingEnvironment).getWorkingDirectory();
+		if (workingDirectory == null) {
+			return null;
+		}
+		return ClasspathCache.load(new File(workingDirectory, ClasspathCache.CACHE_FILE), entries, messager);
+	}
+
 	private void mergeDefaults() {
-		try (InputStream defaults = ReflectionInfoCollector.class.getClassLoader().getResourceAsStream(DEFAULTS)) {
-			ReflectionDescriptor defaultReflectEntries = ReflectStore.readMetadata(defaults);
+		try {
+			ReflectionDescriptor defaultReflectEntries = DefaultsSnapshot.load();
 			for (ClassDescriptor cd : defaultReflectEntries.getClassDescriptors()) {
 				if (typeAvailable(cd.getName())) {
-					if (findClassDescriptor(cd) != null) {
-						addClassDescriptor(cd);
-					} else {
-						mergeClassDescriptor(cd);
-					}
+					mergeClassDescriptor(cd);
 				}
 			}
 		} catch (Exception e) {
@@ -169,72 +464,84 @@ public class ReflectionInfoCollector {
 		}
 	}
 
-	private void processSpringFactories(String projectCompilationClasspath) {
-		if (projectCompilationClasspath == null) {
-			messager.printMessage(Kind.WARNING, "project compilation classpath is not set for processor");
-			return;
+	/**
+	 * Merge the reflect.json fragments that libraries on the classpath ship, keeping the
+	 * entries for types that are available.
+	 */
+	private void mergeClasspathFragments(List<File> entries) {
+		ReflectFragmentReader reader = new ReflectFragmentReader(isParallel(),
+				new ReflectStore(processingEnvironment).getClassOutputDirectory());
+		ReflectionDescriptor fragments = reader.read(entries);
+		int merged = 0;
+		for (ClassDescriptor cd : fragments.getClassDescriptors()) {
+			if (typeAvailable(cd.getName())) {
+				mergeClassDescriptor(cd);
+				merged++;
+			}
 		}
-		StringTokenizer st = new StringTokenizer(projectCompilationClasspath, ":");
-		List<URL> urls = new ArrayList<>();
-		while (st.hasMoreElements()) {
-			try {
-				urls.add(new File(st.nextToken()).toURI().toURL());
-			} catch (MalformedURLException e) {
-				e.printStackTrace();
-			}
-		}
-		Set<String> newTypes = new HashSet<>();
-		try (URLClassLoader ucl = new URLClassLoader(urls.toArray(new URL[] {}), null)) {
-			Enumeration<URL> resources = ucl.getResources("META-INF/spring.factories");
-			while (resources.hasMoreElements()) {
-				URL nextElement = resources.nextElement();
-				Properties p = new Properties();
-				try (InputStream is = nextElement.openStream()) {
-					p.load(is);
-				}
-				for (Object o: p.keySet()) {
-					String k = (String)o;
-					String v = p.getProperty(k);
-					System.out.println("From: "+nextElement+" "+k+" we have "+v);
-					st = new StringTokenizer(v,",");
-					while (st.hasMoreElements()) {
-						String typename = st.nextToken();
-						if (typeAvailable(typename)) {
-//							System.out.println("This exists: "+typename);
-							newTypes.add(typename);
-						}
+		if (reader.getFragmentCount() > 0) {
+			messager.printMessage(Kind.NOTE, "Merged " + merged + " of " + fragments.getClassDescriptors().size()
+					+ " descriptors from " + reader.getFragmentCount() + " " + ReflectStore.METADATA_PATH
+					+ " fragments on the classpath");
+		}
+	}
+
+	private void processSpringFactories(List<File> entries) {
+		List<SpringFactories> allFactories = readSpringFactories(entries);
+		// Candidates are visited in classpath order (keys sorted within each file) so the
+		// output is the same whether or not the files were read in parallel
+		Map<String, SpringFactories> newTypes = new LinkedHashMap<>();
+		Map<String, Set<String>> keys = new HashMap<>();
+		for (SpringFactories factories : allFactories) {
+			for (Map.Entry<String, List<String>> entry : factories.getEntries().entrySet()) {
+				verbose("From: " + factories.getSource() + " " + entry.getKey() + " we have " + entry.getValue());
+				for (String typename : entry.getValue()) {
+					if (!newTypes.containsKey(typename) && typeAvailable(typename)) {
+						newTypes.put(typename, factories);
 					}
+					keys.computeIfAbsent(typename, (t) -> new LinkedHashSet<>()).add(entry.getKey());
 				}
-				
-				
-//				String typesMaybeNeedingReflectiveAccess = (String) p
-//						.get("org.springframework.boot.autoconfigure.EnableAutoConfiguration");
-//				System.out.println("Keys: "+p.keySet());
-//				if (typesMaybeNeedingReflectiveAccess != null) {
-//					System.out.println("From: "+nextElement+" we have "+typesMaybeNeedingReflectiveAccess);
-//					st = new StringTokenizer(typesMaybeNeedingReflectiveAccess,",");
-//					while (st.hasMoreElements()) {
-//						String typename = st.nextToken();
-//						if (typeAvailable(typename)) {
-////							System.out.println("This exists: "+typename);
-//							newTypes.add(typename);
-//						}
-//					}
-//				}
-			}
-		} catch (Throwable t) {
-			t.printStackTrace();
-		}
-		System.out.println("Types from spring.factories: #"+newTypes.size());
-		for (String t: newTypes) {
-			addConstructorDescriptor(t);
+			}
 		}
+		verbose("Types from spring.factories: #" + newTypes.size());
+		newTypes.forEach((typename, source) -> addConstructorDescriptor(typename, source, keys.get(typename)));
+	}
+
+	/**
+	 * Read the factories of each classpath entry, from the classpath cache when the entry
+	 * is unchanged since the last build.
+	 */
+	private List<SpringFactories> readSpringFactories(List<File> entries) {
+		if (this.classpathCache == null) {
+			return new SpringFactoriesReader(isParallel(), messager).read(entries);
+		}
+		SpringFactories[] result = new SpringFactories[entries.size()];
+		List<File> changed = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i++) {
+			result[i] = this.classpathCache.getFactories(entries.get(i));
+			if (result[i] == null) {
+				changed.add(entries.get(i));
+			}
+		}
+		Iterator<SpringFactories> read = new SpringFactoriesReader(isParallel(), messager).read(changed).iterator();
+		for (int i = 0; i < result.length; i++) {
+			if (result[i] == null) {
+				result[i] = read.next();
+				// An unreadable entry is read, and reported, again next time
+				if (result[i].getProblem() == null) {
+					this.classpathCache.putFactories(result[i]);
+				}
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	private boolean isParallel() {
+		return Boolean.parseBoolean(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.PARALLEL));
 	}
 
 	private boolean typeAvailable(String typename) {
-		boolean b = processingEnvironment.getElementUtils().getTypeElement(typename) != null;
-//		System.out.println("Looking for "+typename+" found = "+b);
-		return b;
+		return this.typeAvailability.isAvailable(typename);
 	}
 
 	private Map<String, Object> getAnnotationElementValues(AnnotationMirror annotation) {
@@ -245,12 +552,156 @@ public class ReflectionInfoCollector {
 		return values;
 	}
 	
-	@SuppressWarnings("rawtypes")
 	public void addConstructorDescriptor(String typename) {
+		addConstructorDescriptor(typename, null, null);
+	}
+
+	/**
+	 * Register the constructors of a type found through spring.factories, unless its
+	 * class conditions cannot be satisfied by the classpath. Nested configuration
+	 * classes whose own conditions are satisfied are registered too.
+	 * @param typename the type
+	 * @param source the factories that listed the type, used to look up cached
+	 * conditions, may be {@code null}
+	 * @param keys the spring.factories keys that listed the type, may be {@code null}
+	 */
+	private void addConstructorDescriptor(String typename, SpringFactories source, Set<String> keys) {
+		ClassConditions conditions = getConditions(typename, source);
+		if (conditionsSatisfied(typename, conditions)) {
+			if (keys != null) {
+				this.autoConfigurationKeys.put(typename, keys);
+			}
+			addConfigurationDescriptor(typename, conditions, (keys != null) ? typename : null);
+		}
+	}
+
+	private void addConfigurationDescriptor(String typename, ClassConditions conditions, String owner) {
+		verbose("Adding " + typename + " to reflect.json");
+		// Types already registered for another reason are never pruned
+		if (owner != null && !this.classDescriptors.containsKey(typename)) {
+			this.autoConfigurationOwners.put(typename, owner);
+		}
+		ClassDescriptor cd = ClassDescriptor.of(typename);
+		MethodDescriptor constructor = isPreciseConstructors() ? findInvokedConstructor(typename) : null;
+		if (constructor != null) {
+			cd.addMethodDescriptor(constructor);
+		}
+		else {
+			cd.setFlag(Flag.allDeclaredConstructors);
+		}
+//		cd.setFlag(Flag.allDeclaredMethods);
+		this.mergeClassDescriptor(cd);
+		conditions.getNestedConfigurations().forEach((nested, nestedConditions) -> {
+			if (conditionsSatisfied(nested, nestedConditions)) {
+				addConfigurationDescriptor(nested, nestedConditions, owner);
+			}
+		});
+	}
+
+	private boolean isPreciseConstructors() {
+		return "precise".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.CONSTRUCTORS));
+	}
+
+	/**
+	 * Determine the constructor Spring will invoke to create the type: the
+	 * {@code @Autowired} one, the only one, or the no-arg one.
+	 * @param typename the type
+	 * @return the constructor, or {@code null} if it cannot be determined (the type is
+	 * not available, is an inner class or has several candidate constructors)
+	 */
+	private MethodDescriptor findInvokedConstructor(String typename) {
+		TypeElement type = processingEnvironment.getElementUtils().getTypeElement(typename);
+		if (type == null && typename.indexOf('$') != -1) {
+			type = processingEnvironment.getElementUtils().getTypeElement(typename.replace('$', '.'));
+		}
+		// The constructors of inner classes take the enclosing instance, not in the model
+		if (type == null || (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC))) {
+			return null;
+		}
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		ExecutableElement invoked = null;
+		for (ExecutableElement constructor : constructors) {
+			if (hasAnnotation(constructor, ReflectiveAccessAnnotationProcessor.AUTOWIRED_ANNOTATION)) {
+				invoked = constructor;
+				break;
+			}
+			if (constructors.size() == 1 || constructor.getParameters().isEmpty()) {
+				invoked = constructor;
+			}
+		}
+		if (invoked == null) {
+			return null;
+		}
+		String[] parameterTypes = new String[invoked.getParameters().size()];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			parameterTypes[i] = this.typeUtils.getErasedName(invoked.getParameters().get(i).asType());
+		}
+		return MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME, parameterTypes);
+	}
+
+	private static boolean hasAnnotation(Element element, String annotationType) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean conditionsSatisfied(String typename, ClassConditions conditions) {
+		for (String required : conditions.getRequiredClasses()) {
+			if (!typeAvailable(required)) {
+				verbose("Rejecting " + typename + " because ConditionalOnClass for " + required + " is not satisfied");
+				return false;
+			}
+		}
+		for (String missing : conditions.getMissingClasses()) {
+			if (typeAvailable(missing)) {
+				verbose("Rejecting " + typename + " because ConditionalOnMissingClass for " + missing + " is not satisfied");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void verbose(String message) {
+		if ("true".equalsIgnoreCase(processingEnvironment.getOptions().get(ReflectiveAccessAnnotationProcessor.VERBOSE))) {
+			messager.printMessage(Kind.NOTE, message);
+		}
+	}
+
+	private ClassConditions getConditions(String typename, SpringFactories source) {
+		boolean cacheable = this.classpathCache != null && source != null
+				&& source.getLocalTypes().contains(typename);
+		if (cacheable) {
+			ClassConditions cached = this.classpathCache.getConditions(source.getSource(), typename);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		ClassConditions conditions = (this.conditionEvaluator != null)
+				? this.conditionEvaluator.read((source != null) ? source.getSource() : null, typename) : null;
+		// A class file that could not be parsed may be readable by a later processor version
+		boolean unknown = conditions == ClassConditions.UNKNOWN;
+		if (conditions == null || unknown) {
+			// Not on the classpath as a class file we can read, ask javac instead
+			conditions = new ClassConditions(readConditionalOnClassNames(typename), Collections.emptyList(),
+					Collections.emptyMap());
+		}
+		if (cacheable && !unknown) {
+			this.classpathCache.putConditions(source.getSource(), typename, conditions);
+		}
+		return conditions;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private List<String> readConditionalOnClassNames(String typename) {
 		TypeElement typeElement = processingEnvironment.getElementUtils().getTypeElement(typename);
 		TypeElement coc = processingEnvironment.getElementUtils().getTypeElement("org.springframework.boot.autoconfigure.condition.ConditionalOnClass");
-
-		boolean cocCheckFailed= false;
+		List<String> names = new ArrayList<>();
+		if (typeElement == null) {
+			return names;
+		}
 		List<? extends AnnotationMirror> annotationMirrors = typeElement.getAnnotationMirrors();
 		for (AnnotationMirror am: annotationMirrors) {
 //			System.out.println("COC check on "+am);
@@ -263,28 +714,41 @@ public class ReflectionInfoCollector {
 						AnnotationValue av = (AnnotationValue)o;
 						String s = av.toString(); // org.neo4j.ogm.session.Neo4jSession.class
 						s = s.substring(0,s.length()-".class".length());
-						if (!typeAvailable(s)) {
-							cocCheckFailed=true;
-							System.out.println("Rejecting "+typename+" because ConditionalOnClass for "+s+" not satisfied by classpath");
-							break;
-						}
+						names.add(s);
 					}
 				}
 			}
 		}
-		if (!cocCheckFailed) {
-			System.out.println("Adding "+typename+" to reflect.json");
-			ClassDescriptor cd = ClassDescriptor.of(typename);
-			cd.setFlag(Flag.allDeclaredConstructors);
-//			cd.setFlag(Flag.allDeclaredMethods);
-			this.mergeClassDescriptor(cd);
-		}
+		return names;
 	}
 
-	public void addNoArgConstructorDescriptor(String type) {
+	/**
+	 * Register the no-arg constructor of a type found in the sources being compiled.
+	 * @param type the type
+	 * @param source the element that led to the type being registered
+	 */
+	public void addNoArgConstructorDescriptor(String type, Element source) {
 		ClassDescriptor cd = ClassDescriptor.of(type);
 		cd.addMethodDescriptor(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME));
-		this.mergeClassDescriptor(cd);
+		this.currentContributions = this.sourceContributions.computeIfAbsent(getSourceType(source),
+				(sourceType) -> new ReflectionDescriptor());
+		try {
+			this.mergeClassDescriptor(cd);
+		}
+		finally {
+			this.currentContributions = this.classpathContributions;
+		}
+	}
+
+	/**
+	 * @return the qualified name of the top level type enclosing the element
+	 */
+	private String getSourceType(Element element) {
+		Element topLevel = element;
+		while (topLevel.getEnclosingElement() != null && topLevel.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+			topLevel = topLevel.getEnclosingElement();
+		}
+		return this.typeUtils.getQualifiedName(topLevel);
 	}
 
 }
@@ -16,9 +16,11 @@
 
 package org.springframework.boot.reflectionprocessor;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,15 +33,19 @@ import javax.annotation.processing.SupportedAnnotationTypes;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.DeclaredType;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeKind;
-import javax.lang.model.util.Elements;
+import javax.lang.model.util.ElementScanner8;
 import javax.tools.Diagnostic.Kind;
 
+import org.springframework.boot.graal.reflectconfig.ConfigurationMinimizer;
 import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+import org.springframework.boot.graal.reflectconfig.TypeNamePool;
 
 /**
  * Annotation {@link Processor} that writes Graal reflect.json for Spring Boot apps.
@@ -56,17 +62,75 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 	
 	static final String RESTCONTROLLER_ANNOTATION = "org.springframework.web.bind.annotation.RestController";
 
+	static final String COMPONENT_ANNOTATION = "org.springframework.stereotype.Component";
+
+	static final String SERVICE_ANNOTATION = "org.springframework.stereotype.Service";
+
+	static final String REPOSITORY_ANNOTATION = "org.springframework.stereotype.Repository";
+
+	static final String CONFIGURATION_PROPERTIES_ANNOTATION = "org.springframework.boot.context.properties.ConfigurationProperties";
+
+	static final String AUTOWIRED_ANNOTATION = "org.springframework.beans.factory.annotation.Autowired";
+
 	static final String CLASSPATH = "org.springframework.boot.reflectiveaccessannotationprocessor.classpath";
 
-	private static final Set<String> SUPPORTED_OPTIONS = Collections
-			.unmodifiableSet(Collections.singleton(CLASSPATH));
+	/**
+	 * When {@code true} the spring.factories files and reflect.json fragments on the classpath
+	 * are read in parallel.
+	 */
+	static final String PARALLEL = "org.springframework.boot.reflectiveaccessannotationprocessor.parallel";
+
+	/**
+	 * When {@code false} the on-disk cache of classpath analysis results is not used.
+	 */
+	static final String CACHE = "org.springframework.boot.reflectiveaccessannotationprocessor.cache";
+
+	/**
+	 * When {@code false} every build is treated as a full build, otherwise descriptors
+	 * contributed by sources that were not recompiled are carried over from the
+	 * previous build.
+	 */
+	static final String INCREMENTAL = "org.springframework.boot.reflectiveaccessannotationprocessor.incremental";
+
+	/**
+	 * When {@code false} entries covered by other entries are kept in reflect.json.
+	 */
+	static final String MINIMIZE = "org.springframework.boot.reflectiveaccessannotationprocessor.minimize";
+
+	/**
+	 * When {@code precise} only the constructor Spring invokes is registered for the
+	 * types found through spring.factories, rather than all their declared constructors.
+	 */
+	static final String CONSTRUCTORS = "org.springframework.boot.reflectiveaccessannotationprocessor.constructors";
+
+	/**
+	 * When {@code true} auto-configurations that the sources cannot activate are left out
+	 * of reflect.json.
+	 */
+	static final String PRUNE = "org.springframework.boot.reflectiveaccessannotationprocessor.prune";
+
+	/**
+	 * When {@code true} the decisions taken during classpath analysis, such as the
+	 * spring.factories entries whose conditions are not met, are reported as notes, as
+	 * is how many bytes minimizing saved.
+	 */
+	static final String VERBOSE = "org.springframework.boot.reflectiveaccessannotationprocessor.verbose";
+
+	private static final Set<String> SUPPORTED_OPTIONS = Collections.unmodifiableSet(new HashSet<>(
+			Arrays.asList(CLASSPATH, PARALLEL, CACHE, INCREMENTAL, MINIMIZE, CONSTRUCTORS, PRUNE, VERBOSE)));
 
 	private ReflectStore metadataStore;
 
 	private ReflectionInfoCollector metadataCollector;
 
+	private String projectCompilationClasspath;
+
+	private boolean classpathAnalyzed;
+
 	private TypeUtils typeUtils;
 
+	private Map<String, StereotypeHandler> stereotypeHandlers;
+
 	protected String configurationAnnotation() {
 		return CONFIGURATION_ANNOTATION;
 	}
@@ -91,33 +155,32 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 		this.typeUtils = new TypeUtils(env);
 		this.metadataStore = new ReflectStore(env);
 		this.metadataCollector = new ReflectionInfoCollector(env, this.metadataStore.readMetadata());
-		String projectCompilationClasspath = env.getOptions().get(CLASSPATH);
-		if (projectCompilationClasspath == null) {
+		this.projectCompilationClasspath = env.getOptions().get(CLASSPATH);
+		if (this.projectCompilationClasspath == null) {
 			env.getMessager().printMessage(Kind.WARNING,CLASSPATH+" option not set for processor");
 		}
-		this.metadataCollector.init(projectCompilationClasspath);
+		this.stereotypeHandlers = new HashMap<>();
+		this.stereotypeHandlers.put(configurationAnnotation(), this::processElement);
+		this.stereotypeHandlers.put(restControllerAnnotation(), this::processElement);
+		this.stereotypeHandlers.put(COMPONENT_ANNOTATION, this::processElement);
+		this.stereotypeHandlers.put(SERVICE_ANNOTATION, this::processElement);
+		this.stereotypeHandlers.put(REPOSITORY_ANNOTATION, this::processElement);
+		this.stereotypeHandlers.put(CONFIGURATION_PROPERTIES_ANNOTATION, this::processElement);
 	}
 
 	@Override
 	public boolean process(Set<? extends TypeElement> annotations,
 			RoundEnvironment roundEnv) {
 		this.metadataCollector.processing(roundEnv);
-		Elements elementUtils = this.processingEnv.getElementUtils();
-
-		// TODO very simplistic, not even looking for meta annotated yet
-
-		TypeElement annotationType = elementUtils.getTypeElement(configurationAnnotation());
-		if (annotationType != null) {
-			for (Element element: roundEnv.getElementsAnnotatedWith(annotationType)) {
-				processElement(element);
-			}
+		if (!this.classpathAnalyzed) {
+			// Analyzed once the sources are known, a type they define satisfies conditions
+			this.classpathAnalyzed = true;
+			this.metadataCollector.init(this.projectCompilationClasspath);
 		}
 
-		annotationType = elementUtils.getTypeElement(restControllerAnnotation());
-		if (annotationType != null) {
-			for (Element element: roundEnv.getElementsAnnotatedWith(annotationType)) {
-				processElement(element);
-			}
+		StereotypeScanner scanner = new StereotypeScanner(new MetaAnnotationGraph(this.stereotypeHandlers.keySet()));
+		for (Element element : roundEnv.getRootElements()) {
+			scanner.scan(element);
 		}
 
 		if (roundEnv.processingOver()) {
@@ -127,77 +190,25 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 			catch (Exception ex) {
 				throw new IllegalStateException("Failed to write metadata", ex);
 			}
-		}
-		return false;
-	}
-
-	private Map<Element, List<Element>> getElementsAnnotatedOrMetaAnnotatedWith(
-			RoundEnvironment roundEnv, TypeElement annotation) {
-		DeclaredType annotationType = (DeclaredType) annotation.asType();
-		Map<Element, List<Element>> result = new LinkedHashMap<>();
-		for (Element element : roundEnv.getRootElements()) {
-			LinkedList<Element> stack = new LinkedList<>();
-			stack.push(element);
-			collectElementsAnnotatedOrMetaAnnotatedWith(annotationType, stack);
-			stack.removeFirst();
-			if (!stack.isEmpty()) {
-				result.put(element, Collections.unmodifiableList(stack));
-			}
-		}
-		return result;
-	}
-
-	private boolean collectElementsAnnotatedOrMetaAnnotatedWith(
-			DeclaredType annotationType, LinkedList<Element> stack) {
-		Element element = stack.peekLast();
-		for (AnnotationMirror annotation : this.processingEnv.getElementUtils()
-				.getAllAnnotationMirrors(element)) {
-			Element annotationElement = annotation.getAnnotationType().asElement();
-			if (!stack.contains(annotationElement)) {
-				stack.addLast(annotationElement);
-				if (annotationElement.equals(annotationType.asElement())) {
-					return true;
-				}
-				if (!collectElementsAnnotatedOrMetaAnnotatedWith(annotationType, stack)) {
-					stack.removeLast();
-				}
+			finally {
+				// The pool is static, do not retain the names of this compilation in a
+				// long lived compiler (IDE, build daemon)
+				TypeNamePool.get().clear();
 			}
 		}
 		return false;
 	}
 
-	private void processElement(Element element) {
+	private void processElement(Element element, AnnotationMirror annotation) {
 		try {
-			AnnotationMirror annotation = getAnnotation(element, configurationAnnotation());
-			if (annotation != null) {
-				String prefix = getPrefix(annotation);
-				if (element instanceof TypeElement) {
-					String type = this.typeUtils.getQualifiedName(element);
-					addConstructorDescriptor(type);
-//					processAnnotatedTypeElement(prefix, (TypeElement) element);
-				}
-				else if (element instanceof ExecutableElement) {
-					processExecutableElement(prefix, (ExecutableElement) element);
-				}
+			String prefix = getPrefix(annotation);
+			if (element instanceof TypeElement) {
+				String type = this.typeUtils.getQualifiedName(element);
+				addConstructorDescriptor(type, element);
+//				processAnnotatedTypeElement(prefix, (TypeElement) element);
 			}
-		}
-		catch (Exception ex) {
-			throw new IllegalStateException(
-					"Error processing configuration meta-data on " + element, ex);
-		}
-		
-		try {
-			AnnotationMirror annotation = getAnnotation(element, restControllerAnnotation());
-			if (annotation != null) {
-				String prefix = getPrefix(annotation);
-				if (element instanceof TypeElement) {
-					String type = this.typeUtils.getQualifiedName(element);
-					addConstructorDescriptor(type);
-//					processAnnotatedTypeElement(prefix, (TypeElement) element);
-				}
-				else if (element instanceof ExecutableElement) {
-					processExecutableElement(prefix, (ExecutableElement) element);
-				}
+			else if (element instanceof ExecutableElement) {
+				processExecutableElement(prefix, (ExecutableElement) element);
 			}
 		}
 		catch (Exception ex) {
@@ -206,9 +217,9 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 		}
 	}
 	
-	private void addConstructorDescriptor(String type) {
+	private void addConstructorDescriptor(String type, Element source) {
 		System.out.println(">>> Adding ctor descriptor "+type);
-		metadataCollector.addNoArgConstructorDescriptor(type);
+		metadataCollector.addNoArgConstructorDescriptor(type, source);
 	}
 
 //	private void processAnnotatedTypeElement(String prefix, TypeElement element) {
@@ -287,107 +298,6 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 //		});
 //	}
 
-//	private void processEndpoint(Element element, List<Element> annotations) {
-//		try {
-//			String annotationName = this.typeUtils.getQualifiedName(annotations.get(0));
-//			AnnotationMirror annotation = getAnnotation(element, annotationName);
-//			if (element instanceof TypeElement) {
-////				processEndpoint(annotation, (TypeElement) element);
-//			}
-//		}
-//		catch (Exception ex) {
-//			throw new IllegalStateException(
-//					"Error processing configuration meta-data on " + element, ex);
-//		}
-//	}
-//
-//	private boolean hasMainReadOperation(TypeElement element) {
-//		for (ExecutableElement method : ElementFilter
-//				.methodsIn(element.getEnclosedElements())) {
-//			if (hasAnnotation(method, readOperationAnnotation())
-//					&& (TypeKind.VOID != method.getReturnType().getKind())
-//					&& hasNoOrOptionalParameters(method)) {
-//				return true;
-//			}
-//		}
-//		return false;
-//	}
-//
-//	private boolean hasNoOrOptionalParameters(ExecutableElement method) {
-//		for (VariableElement parameter : method.getParameters()) {
-//			if (!hasAnnotation(parameter, NULLABLE_ANNOTATION)) {
-//				return false;
-//			}
-//		}
-//		return true;
-//	}
-//
-//	private boolean isNested(Element returnType, VariableElement field,
-//			TypeElement element) {
-//		if (hasAnnotation(field, nestedConfigurationPropertyAnnotation())) {
-//			return true;
-//		}
-//		if (isCyclePresent(returnType, element)) {
-//			return false;
-//		}
-//		return (isParentTheSame(returnType, element))
-//				&& returnType.getKind() != ElementKind.ENUM;
-//	}
-//
-//	private boolean isCyclePresent(Element returnType, Element element) {
-//		if (!(element.getEnclosingElement() instanceof TypeElement)) {
-//			return false;
-//		}
-//		if (element.getEnclosingElement().equals(returnType)) {
-//			return true;
-//		}
-//		return isCyclePresent(returnType, element.getEnclosingElement());
-//	}
-//
-//	private boolean isParentTheSame(Element returnType, TypeElement element) {
-//		if (returnType == null || element == null) {
-//			return false;
-//		}
-//		return getTopLevelType(returnType).equals(getTopLevelType(element));
-//	}
-//
-//	private Element getTopLevelType(Element element) {
-//		if (!(element.getEnclosingElement() instanceof TypeElement)) {
-//			return element;
-//		}
-//		return getTopLevelType(element.getEnclosingElement());
-//	}
-//
-//	private boolean isDeprecated(Element element) {
-//		if (isElementDeprecated(element)) {
-//			return true;
-//		}
-//		if (element instanceof VariableElement || element instanceof ExecutableElement) {
-//			return isElementDeprecated(element.getEnclosingElement());
-//		}
-//		return false;
-//	}
-//
-//	private boolean isElementDeprecated(Element element) {
-//		return hasAnnotation(element, "java.lang.Deprecated")
-//				|| hasAnnotation(element, deprecatedConfigurationPropertyAnnotation());
-//	}
-//
-//	private boolean hasAnnotation(Element element, String type) {
-//		return getAnnotation(element, type) != null;
-//	}
-
-	private AnnotationMirror getAnnotation(Element element, String type) {
-		if (element != null) {
-			for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
-				if (type.equals(annotation.getAnnotationType().toString())) {
-					return annotation;
-				}
-			}
-		}
-		return null;
-	}
-
 	private String getPrefix(AnnotationMirror annotation) {
 		Map<String, Object> elementValues = getAnnotationElementValues(annotation);
 		Object prefix = elementValues.get("prefix");
@@ -410,6 +320,13 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 
 	protected ReflectionDescriptor writeReflectJson() throws Exception {
 		ReflectionDescriptor metadata = this.metadataCollector.getMetadata();
+		this.metadataCollector.saveIndex();
+		if (!"false".equalsIgnoreCase(this.processingEnv.getOptions().get(MINIMIZE))) {
+			ConfigurationMinimizer minimizer = new ConfigurationMinimizer(
+					"true".equalsIgnoreCase(this.processingEnv.getOptions().get(VERBOSE)));
+			metadata = minimizer.minimize(metadata);
+			this.processingEnv.getMessager().printMessage(Kind.NOTE, "Minimized reflect.json: " + minimizer.getStatistics());
+		}
 		if (!metadata.isEmpty()) {
 //		metadata = mergeAdditionalMetadata(metadata);
 //		if (!metadata.getItems().isEmpty()) {
@@ -420,6 +337,71 @@ public class ReflectiveAccessAnnotationProcessor extends AbstractProcessor {
 	}
 
 
+	/**
+	 * Visits the types and methods of the sources once, handing each element to the
+	 * handler registered for any of its annotations, whether present directly or as a
+	 * meta-annotation.
+	 */
+	private class StereotypeScanner extends ElementScanner8<Void, Void> {
+
+		private final MetaAnnotationGraph metaAnnotationGraph;
+
+		StereotypeScanner(MetaAnnotationGraph metaAnnotationGraph) {
+			this.metaAnnotationGraph = metaAnnotationGraph;
+		}
+
+		@Override
+		public Void visitType(TypeElement e, Void p) {
+			// Stereotypes on an annotation type make it a composed annotation
+			if (e.getKind() != ElementKind.ANNOTATION_TYPE) {
+				dispatch(e);
+			}
+			return super.visitType(e, p);
+		}
+
+		@Override
+		public Void visitExecutable(ExecutableElement e, Void p) {
+			dispatch(e);
+			// Parameters are not of interest
+			return null;
+		}
+
+		@Override
+		public Void visitVariable(VariableElement e, Void p) {
+			return null;
+		}
+
+		@Override
+		public Void visitTypeParameter(TypeParameterElement e, Void p) {
+			return null;
+		}
+
+		private void dispatch(Element element) {
+			List<? extends AnnotationMirror> annotations = element.getAnnotationMirrors();
+			if (annotations.isEmpty()) {
+				return;
+			}
+			Map<String, AnnotationMirror> stereotypes = new LinkedHashMap<>();
+			for (AnnotationMirror annotation : annotations) {
+				TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+				String name = annotationType.getQualifiedName().toString();
+				if (stereotypeHandlers.containsKey(name)) {
+					stereotypes.put(name, annotation);
+				}
+				this.metaAnnotationGraph.getMetaAnnotations(annotationType).forEach(stereotypes::putIfAbsent);
+			}
+			stereotypes.forEach((name, annotation) -> stereotypeHandlers.get(name).handle(element, annotation));
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface StereotypeHandler {
+
+		void handle(Element element, AnnotationMirror annotation);
+
+	}
+
 	private void logWarning(String msg) {
 		log(Kind.WARNING, msg);
 	}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Reads the {@code META-INF/spring.factories} file from each entry of a compilation
+ * classpath. Each entry is read independently so that, in parallel mode, the entries
+ * can be spread over a fork/join pool. Results are always returned in classpath order
+ * and the keys of each file are sorted, so the outcome does not depend on the mode.
+ * Alongside the factories the reader records which of the listed types are defined by
+ * the same entry, that is what allows facts about those types to be cached per entry.
+ *
+ * @author Andy Clement
+ */
+class SpringFactoriesReader {
+
+	static final String SPRING_FACTORIES = "META-INF/spring.factories";
+
+	private final boolean parallel;
+
+	private final Messager messager;
+
+	SpringFactoriesReader(boolean parallel) {
+		this(parallel, null);
+	}
+
+	/**
+	 * Create a reader.
+	 * @param parallel whether entries are read on the fork/join pool
+	 * @param messager reports the entries that could not be read, may be {@code null}
+	 */
+	SpringFactoriesReader(boolean parallel, Messager messager) {
+		this.parallel = parallel;
+		this.messager = messager;
+	}
+
+	/**
+	 * Split a ':' separated classpath into its entries.
+	 * @param classpath the classpath
+	 * @return the entries, in classpath order
+	 */
+	static List<File> toEntries(String classpath) {
+		List<File> entries = new ArrayList<>();
+		StringTokenizer st = new StringTokenizer(classpath, ":");
+		while (st.hasMoreTokens()) {
+			entries.add(new File(st.nextToken()));
+		}
+		return entries;
+	}
+
+	/**
+	 * Read the factories files from the supplied classpath entries.
+	 * @param entries the classpath entries (jars or directories)
+	 * @return one {@link SpringFactories} per entry, in classpath order (entries without
+	 * a factories file produce an empty {@link SpringFactories})
+	 */
+	List<SpringFactories> read(List<File> entries) {
+		List<SpringFactories> result;
+		if (this.parallel && entries.size() > 1) {
+			result = ForkJoinPool.commonPool().invoke(new ReadTask(entries, 0, entries.size()));
+		}
+		else {
+			result = new ArrayList<>();
+			for (File entry : entries) {
+				result.add(read(entry));
+			}
+		}
+		// The messager is not thread safe, problems are reported once the reads are done
+		if (this.messager != null) {
+			for (SpringFactories factories : result) {
+				if (factories.getProblem() != null) {
+					this.messager.printMessage(Kind.WARNING, factories.getProblem());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read the factories file from a single classpath entry.
+	 * @param entry the jar or directory
+	 * @return the factories, empty if the entry does not contain the file
+	 */
+	static SpringFactories read(File entry) {
+		try {
+			if (entry.isDirectory()) {
+				File file = new File(entry, SPRING_FACTORIES);
+				if (!file.isFile()) {
+					return SpringFactories.none(entry);
+				}
+				Map<String, List<String>> entries;
+				try (InputStream is = new FileInputStream(file)) {
+					entries = load(is);
+				}
+				Set<String> localTypes = new TreeSet<>();
+				for (List<String> values : entries.values()) {
+					for (String value : values) {
+						if (new File(entry, toClassFileName(value)).isFile()) {
+							localTypes.add(value);
+						}
+					}
+				}
+				return new SpringFactories(entry, entries, localTypes);
+			}
+			if (!entry.isFile()) {
+				return SpringFactories.none(entry);
+			}
+			try (JarFile jar = new JarFile(entry)) {
+				ZipEntry zipEntry = jar.getEntry(SPRING_FACTORIES);
+				if (zipEntry == null) {
+					return SpringFactories.none(entry);
+				}
+				Map<String, List<String>> entries;
+				try (InputStream is = jar.getInputStream(zipEntry)) {
+					entries = load(is);
+				}
+				Set<String> localTypes = new TreeSet<>();
+				for (List<String> values : entries.values()) {
+					for (String value : values) {
+						if (jar.getEntry(toClassFileName(value)) != null) {
+							localTypes.add(value);
+						}
+					}
+				}
+				return new SpringFactories(entry, entries, localTypes);
+			}
+		}
+		catch (IOException ex) {
+			return SpringFactories.unreadable(entry,
+					"Unable to read " + SPRING_FACTORIES + " from " + entry + ": " + ex.getMessage());
+		}
+	}
+
+	static String toClassFileName(String typename) {
+		return typename.replace('.', '/') + ".class";
+	}
+
+	private static Map<String, List<String>> load(InputStream is) throws IOException {
+		Properties p = new Properties();
+		p.load(is);
+		Map<String, List<String>> entries = new LinkedHashMap<>();
+		for (String key : new TreeSet<>(p.stringPropertyNames())) {
+			List<String> values = new ArrayList<>();
+			StringTokenizer st = new StringTokenizer(p.getProperty(key), ",");
+			while (st.hasMoreTokens()) {
+				String value = st.nextToken().trim();
+				if (!value.isEmpty()) {
+					values.add(value);
+				}
+			}
+			entries.put(key, Collections.unmodifiableList(values));
+		}
+		return Collections.unmodifiableMap(entries);
+	}
+
+	/**
+	 * Splits the range of entries in half until single entries remain, the results are
+	 * joined back together in classpath order.
+	 */
+	@SuppressWarnings("serial")
+	private static class ReadTask extends RecursiveTask<List<SpringFactories>> {
+
+		private final List<File> entries;
+
+		private final int from;
+
+		private final int to;
+
+		ReadTask(List<File> entries, int from, int to) {
+			this.entries = entries;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<SpringFactories> compute() {
+			if (this.to - this.from == 1) {
+				return new ArrayList<>(Collections.singletonList(read(this.entries.get(this.from))));
+			}
+			int middle = (this.from + this.to) >>> 1;
+			ReadTask left = new ReadTask(this.entries, this.from, middle);
+			left.fork();
+			List<SpringFactories> result = new ReadTask(this.entries, middle, this.to).compute();
+			List<SpringFactories> leftResult = left.join();
+			leftResult.addAll(result);
+			return leftResult;
+		}
+
+	}
+
+	/**
+	 * The contents of the factories file from one classpath entry.
+	 */
+	static class SpringFactories {
+
+		private final File source;
+
+		private final Map<String, List<String>> entries;
+
+		private final Set<String> localTypes;
+
+		private final String problem;
+
+		SpringFactories(File source, Map<String, List<String>> entries, Set<String> localTypes) {
+			this(source, entries, localTypes, null);
+		}
+
+		private SpringFactories(File source, Map<String, List<String>> entries, Set<String> localTypes,
+				String problem) {
+			this.source = source;
+			this.entries = entries;
+			this.localTypes = localTypes;
+			this.problem = problem;
+		}
+
+		static SpringFactories none(File source) {
+			return new SpringFactories(source, Collections.emptyMap(), Collections.emptySet());
+		}
+
+		static SpringFactories unreadable(File source, String problem) {
+			return new SpringFactories(source, Collections.emptyMap(), Collections.emptySet(), problem);
+		}
+
+		File getSource() {
+			return this.source;
+		}
+
+		/**
+		 * @return the factory keys mapped to their values, keys in sorted order
+		 */
+		Map<String, List<String>> getEntries() {
+			return this.entries;
+		}
+
+		/**
+		 * @return the listed types whose class file is in the same classpath entry
+		 */
+		Set<String> getLocalTypes() {
+			return this.localTypes;
+		}
+
+		boolean isEmpty() {
+			return this.entries.isEmpty();
+		}
+
+		/**
+		 * @return why the factories file could not be read, or {@code null}
+		 */
+		String getProblem() {
+			return this.problem;
+		}
+
+	}
+
+}
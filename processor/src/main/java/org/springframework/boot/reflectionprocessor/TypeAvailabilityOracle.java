@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+/**
+ * Answers whether a type is on the compilation classpath. {@link Elements#getTypeElement}
+ * forces javac to complete the symbol, and the same few names (Jackson, Reactor,
+ * Servlet...) are asked about by the defaults, the spring.factories entries and many
+ * {@code ConditionalOnClass} annotations, so both positive and negative answers are
+ * remembered for the rest of the processor run. Answers from the classpath cache of a
+ * previous build are used before asking javac.
+ * <p>
+ * Types defined by the sources being compiled are available whatever the classpath, the
+ * answers for them are never put in the classpath cache, nor taken from it. Neither are
+ * the positive answers for types found in the class output directory, those come from
+ * sources compiled by an earlier build that may since have been deleted. The answers a
+ * change to the sources could alter, those for source types, for types in the class
+ * output and the negative ones, are kept so that the reuse of classpath results can be
+ * checked against them.
+ *
+ * @author Andy Clement
+ */
+class TypeAvailabilityOracle {
+
+	private final Elements elements;
+
+	private final ClasspathCache classpathCache;
+
+	private final Set<String> sourceTypes;
+
+	private final File classOutput;
+
+	private final Map<String, Boolean> availability = new HashMap<>();
+
+	private final Map<String, Boolean> sourceDependentAnswers = new TreeMap<>();
+
+	private int queries;
+
+	private int lookups;
+
+	/**
+	 * Create a new oracle.
+	 * @param elements the javac elements utility used for lookups
+	 * @param classpathCache the classpath cache to consult and record answers in, may be
+	 * {@code null}
+	 */
+	TypeAvailabilityOracle(Elements elements, ClasspathCache classpathCache) {
+		this(elements, classpathCache, Collections.emptySet());
+	}
+
+	/**
+	 * Create a new oracle.
+	 * @param elements the javac elements utility used for lookups
+	 * @param classpathCache the classpath cache to consult and record answers in, may be
+	 * {@code null}
+	 * @param sourceTypes the canonical names of the types defined by the sources being
+	 * compiled, nested types included
+	 */
+	TypeAvailabilityOracle(Elements elements, ClasspathCache classpathCache, Set<String> sourceTypes) {
+		this(elements, classpathCache, sourceTypes, null);
+	}
+
+	/**
+	 * Create a new oracle.
+	 * @param elements the javac elements utility used for lookups
+	 * @param classpathCache the classpath cache to consult and record answers in, may be
+	 * {@code null}
+	 * @param sourceTypes the canonical names of the types defined by the sources being
+	 * compiled, nested types included
+	 * @param classOutput the class output directory of the compilation, may be
+	 * {@code null}
+	 */
+	TypeAvailabilityOracle(Elements elements, ClasspathCache classpathCache, Set<String> sourceTypes,
+			File classOutput) {
+		this.elements = elements;
+		this.classpathCache = classpathCache;
+		this.sourceTypes = sourceTypes;
+		this.classOutput = classOutput;
+	}
+
+	boolean isAvailable(String typename) {
+		this.queries++;
+		Boolean available = this.availability.get(typename);
+		if (available != null) {
+			return available;
+		}
+		if (this.sourceTypes.contains(typename)) {
+			available = true;
+			this.sourceDependentAnswers.put(typename, true);
+		}
+		else {
+			available = (this.classpathCache != null) ? this.classpathCache.getAvailability(typename) : null;
+			if (available == null) {
+				this.lookups++;
+				TypeElement type = this.elements.getTypeElement(typename);
+				available = type != null;
+				if (available && isInClassOutput(type)) {
+					// Deleting the source it was compiled from removes it
+					this.sourceDependentAnswers.put(typename, true);
+				}
+				else if (this.classpathCache != null) {
+					this.classpathCache.putAvailability(typename, available);
+				}
+			}
+			if (!available) {
+				// A source defining the type may be added
+				this.sourceDependentAnswers.put(typename, false);
+			}
+		}
+		this.availability.put(typename, available);
+		return available;
+	}
+
+	private boolean isInClassOutput(TypeElement type) {
+		if (this.classOutput == null) {
+			return false;
+		}
+		Element outermost = type;
+		while (outermost.getEnclosingElement() instanceof TypeElement) {
+			outermost = outermost.getEnclosingElement();
+		}
+		String name = ((TypeElement) outermost).getQualifiedName().toString();
+		return new File(this.classOutput, SpringFactoriesReader.toClassFileName(name)).isFile();
+	}
+
+	/**
+	 * @return the answers given so far that a change to the sources could alter, keyed by
+	 * type name
+	 */
+	Map<String, Boolean> getSourceDependentAnswers() {
+		return Collections.unmodifiableMap(this.sourceDependentAnswers);
+	}
+
+	/**
+	 * @return how many questions were answered without a javac lookup
+	 */
+	int getHits() {
+		return this.queries - this.lookups;
+	}
+
+	/**
+	 * @return how many questions needed a javac lookup
+	 */
+	int getLookups() {
+		return this.lookups;
+	}
+
+	/**
+	 * @return the fraction of questions answered without a javac lookup
+	 */
+	double getHitRate() {
+		return (this.queries != 0) ? getHits() / (double) this.queries : 0d;
+	}
+
+	String getStatistics() {
+		return String.format("type availability %d queries, %d lookups, hit rate %.1f%%", this.queries,
+				this.lookups, getHitRate() * 100);
+	}
+
+}
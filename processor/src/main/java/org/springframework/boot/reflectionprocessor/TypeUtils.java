@@ -124,6 +124,27 @@ class TypeUtils {
 		return type.accept(this.typeExtractor, null);
 	}
 
+	/**
+	 * Return the name of the erasure of the specified type, spelled the way reflection
+	 * (and reflect.json) does: {@code int}, {@code java.lang.String[]},
+	 * {@code java.util.Map$Entry}.
+	 * @param type the type to handle
+	 * @return the erased name
+	 */
+	public String getErasedName(TypeMirror type) {
+		TypeMirror erasure = this.env.getTypeUtils().erasure(type);
+		if (erasure.getKind().isPrimitive()) {
+			return erasure.toString();
+		}
+		if (erasure.getKind() == TypeKind.ARRAY) {
+			return getErasedName(((ArrayType) erasure).getComponentType()) + "[]";
+		}
+		if (erasure.getKind() == TypeKind.DECLARED) {
+			return getQualifiedName(((DeclaredType) erasure).asElement());
+		}
+		return erasure.toString();
+	}
+
 	public boolean isCollectionOrMap(TypeMirror type) {
 		return this.env.getTypeUtils().isAssignable(type, this.collectionType)
 				|| this.env.getTypeUtils().isAssignable(type, this.mapType);
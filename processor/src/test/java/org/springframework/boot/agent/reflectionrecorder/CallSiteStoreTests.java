@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.springframework.boot.agent.reflectionrecorder.CallSiteStore.CallSite;
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+
+/**
+ * Tests for {@link CallSiteStore}.
+ *
+ * @author Andy Clement
+ */
+public class CallSiteStoreTests {
+
+	@Test
+	public void callsAreCountedPerSite() throws Exception {
+		CallSiteStore store = new CallSiteStore();
+		StackTraceElement first = frame(10);
+		StackTraceElement second = frame(20);
+		for (int i = 0; i < 100000; i++) {
+			store.record(ReflectiveCall.CLASS_GETDECLAREDMETHOD, frame(10),
+					new Object[] { String.class, "length", new Class<?>[0] });
+			store.record(ReflectiveCall.METHOD_INVOKE, second,
+					new Object[] { String.class.getMethod("length"), "target", new Object[0] });
+		}
+		store.record(ReflectiveCall.CLASS_GETANNOTATIONS, first, new Object[] { String.class });
+		store.record(ReflectiveCall.CONSTRUCTOR_NEWINSTANCE, first,
+				new Object[] { String.class.getConstructor(), new Object[0] });
+		assertEquals(4, store.getSiteCount());
+		assertEquals(200002, store.getCallCount());
+		Map<String, Long> counts = new TreeMap<>();
+		Map<String, CallSite> sites = new TreeMap<>();
+		store.forEach((site, count) -> {
+			counts.put(site.toString(), count);
+			sites.put(site.getType().name(), site);
+		});
+		assertEquals(Long.valueOf(100000),
+				counts.get("CLASS_GETDECLAREDMETHOD java.lang.String.length from a.Caller.run:10"));
+		assertEquals(Long.valueOf(100000), counts.get("METHOD_INVOKE java.lang.String.length from a.Caller.run:20"));
+		assertEquals(Long.valueOf(1), counts.get("CLASS_GETANNOTATIONS java.lang.String from a.Caller.run:10"));
+		assertEquals(Long.valueOf(1),
+				counts.get("CONSTRUCTOR_NEWINSTANCE java.lang.String.<init> from a.Caller.run:10"));
+		// The names are held once
+		assertSame(sites.get("METHOD_INVOKE").getCallerClass(), sites.get("CLASS_GETANNOTATIONS").getCallerClass());
+	}
+
+	private StackTraceElement frame(int line) {
+		// Each frame has its own copy of the names, as the frames captured at runtime do
+		return new StackTraceElement(new String("a.Caller"), new String("run"), "Caller.java", line);
+	}
+
+}
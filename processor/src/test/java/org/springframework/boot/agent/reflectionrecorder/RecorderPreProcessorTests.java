@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.springframework.boot.graal.reflectconfig.FieldDescriptor;
+import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Tests for {@link RecorderPreProcessor}.
+ *
+ * @author Andy Clement
+ */
+public class RecorderPreProcessorTests {
+
+	@Test
+	public void classesWithoutInterceptedCallsAreLeftAlone() throws Exception {
+		// Class.getName() is not intercepted, the prescan must not be fooled by the owner
+		byte[] bytes = bytesOf(NoReflection.class);
+		assertFalse(RewriteReflectionAdaptor.callsInterceptableMethod(new ClassReader(bytes)));
+		assertSame(bytes, RecorderPreProcessor.rewrite(bytes)[0]);
+	}
+
+	@Test
+	public void onlyMethodsWithInterceptedCallsAreRewritten() throws Exception {
+		byte[] bytes = bytesOf(WithReflection.class);
+		assertTrue(RewriteReflectionAdaptor.callsInterceptableMethod(new ClassReader(bytes)));
+		byte[] rewritten = (byte[]) RecorderPreProcessor.rewrite(bytes)[0];
+		assertNotSame(bytes, rewritten);
+		Map<String, String> calls = calls(rewritten);
+		assertEquals("org/springframework/boot/agent/reflectionrecorder/RI.jlrMethodInvoke", calls.get("call"));
+		assertEquals("java/lang/Class.getName", calls.get("plain"));
+		// The rewritten class still verifies
+		Class<?> loaded = define(WithReflection.class.getName(), rewritten);
+		Object instance = loaded.getDeclaredConstructor().newInstance();
+		assertEquals(loaded.getName(), loaded.getDeclaredMethod("plain").invoke(instance));
+	}
+
+	@Test
+	public void classesOnlyReferencingInterceptedMethodsAreNotCountedAsRewritten() throws Exception {
+		// The method reference puts Method.invoke in the constant pool, but nothing calls it
+		byte[] bytes = bytesOf(WithMethodReference.class);
+		assertTrue(RewriteReflectionAdaptor.callsInterceptableMethod(new ClassReader(bytes)));
+		long rewritten = RecorderPreProcessor.getRewrittenCount();
+		assertSame(bytes, RecorderPreProcessor.rewrite(bytes)[0]);
+		assertEquals(rewritten, RecorderPreProcessor.getRewrittenCount());
+	}
+
+	@Test
+	public void fieldWritesAreDumpedAsAllowWrite() throws Exception {
+		byte[] bytes = bytesOf(WithFieldWrite.class);
+		byte[] rewritten = (byte[]) RecorderPreProcessor.rewrite(bytes)[0];
+		assertEquals("org/springframework/boot/agent/reflectionrecorder/RI.jlrFieldSetInt",
+				calls(rewritten).get("write"));
+		Class<?> loaded = define(WithFieldWrite.class.getName(), rewritten);
+		File reflectFile = new File(Files.createTempDirectory("recorder").toFile(), "reflect.json");
+		boolean precise = Configuration.precise;
+		String previousReflectFile = Configuration.reflectFile;
+		Configuration.precise = true;
+		Configuration.reflectFile = reflectFile.getPath();
+		try {
+			Object instance = loaded.getDeclaredConstructor().newInstance();
+			assertEquals(3, loaded.getDeclaredMethod("write").invoke(instance));
+			// End the inactivity period now, the dumper writes the file and finishes
+			RI.id.endTime = 0;
+			RI.activityThread.join();
+		}
+		finally {
+			Configuration.precise = precise;
+			Configuration.reflectFile = previousReflectFile;
+		}
+		ReflectionDescriptor dumped;
+		try (InputStream in = new FileInputStream(reflectFile)) {
+			dumped = JsonMarshaller.read(in);
+		}
+		FieldDescriptor count = dumped.getClassDescriptor(WithFieldWrite.class.getName()).getFieldDescriptor("count");
+		assertEquals(FieldDescriptor.of("count", true), count);
+	}
+
+	private Class<?> define(String name, byte[] bytes) {
+		return new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		}.define();
+	}
+
+	private Map<String, String> calls(byte[] bytes) {
+		Map<String, String> calls = new HashMap<>();
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM6) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+					String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM6) {
+					@Override
+					public void visitMethodInsn(int opcode, String owner, String methodName, String methodDescriptor,
+							boolean itf) {
+						calls.put(name, owner + "." + methodName);
+					}
+				};
+			}
+		}, 0);
+		return calls;
+	}
+
+	private byte[] bytesOf(Class<?> type) throws Exception {
+		try (InputStream in = type.getResourceAsStream(type.getName().replaceAll(".*\\.", "") + ".class")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	public static class NoReflection {
+
+		public String plain() {
+			return getClass().getName();
+		}
+
+	}
+
+	public static class WithFieldWrite {
+
+		private int count;
+
+		public int write() throws Exception {
+			Field field = WithFieldWrite.class.getDeclaredField("count");
+			field.setInt(this, 3);
+			return this.count;
+		}
+
+	}
+
+	public static class WithMethodReference {
+
+		public Invoker invoker() {
+			return Method::invoke;
+		}
+
+		interface Invoker {
+
+			Object invoke(Method method, Object target, Object... arguments) throws Exception;
+
+		}
+
+	}
+
+	public static class WithReflection {
+
+		public Object call(Method method) throws Exception {
+			return method.invoke(this);
+		}
+
+		public String plain() {
+			return getClass().getName();
+		}
+
+	}
+
+}
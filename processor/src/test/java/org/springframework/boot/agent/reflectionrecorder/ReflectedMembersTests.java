@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.agent.reflectionrecorder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.boot.agent.reflectionrecorder.RI.ReflectiveCall;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+import org.springframework.boot.graal.reflectconfig.FieldDescriptor;
+import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
+
+/**
+ * Tests for {@link ReflectedMembers}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectedMembersTests {
+
+	@Test
+	public void membersUsedAreRecorded() throws Exception {
+		ReflectedMembers members = new ReflectedMembers();
+		members.record(ReflectiveCall.METHOD_INVOKE,
+				new Object[] { String.class.getMethod("split", String.class, int.class), "a", null });
+		members.record(ReflectiveCall.METHOD_INVOKE,
+				new Object[] { String.class.getMethod("split", String.class, int.class), "b", null });
+		members.record(ReflectiveCall.CONSTRUCTOR_NEWINSTANCE,
+				new Object[] { String.class.getConstructor(char[].class) });
+		members.record(ReflectiveCall.FIELD_GETINT, new Object[] { Point.class.getField("x"), new Point() });
+		members.record(ReflectiveCall.FIELD_SETCHAR, new Object[] { Point.class.getField("y"), new Point(), 'c' });
+		members.record(ReflectiveCall.CLASS_ISANNOTATIONPRESENT, new Object[] { Integer.class, Deprecated.class });
+		Map<String, ClassDescriptor> recorded = recorded(members);
+		assertEquals(3, recorded.size());
+		ClassDescriptor string = recorded.get("java.lang.String");
+		assertNull(string.getFlags());
+		assertNull(string.getFields());
+		assertEquals(Arrays.asList(MethodDescriptor.of("split", "java.lang.String", "int"),
+				MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME, "char[]")), string.getMethods());
+		ClassDescriptor point = recorded.get("java.awt.Point");
+		assertEquals(Arrays.asList(FieldDescriptor.of("x", false), FieldDescriptor.of("y", true)), point.getFields());
+		ClassDescriptor integer = recorded.get("java.lang.Integer");
+		assertNull(integer.getMethods());
+		assertNull(integer.getFlags());
+	}
+
+	@Test
+	public void lookupsRegisterWhatTheyFind() throws Exception {
+		ReflectedMembers members = new ReflectedMembers();
+		// hashCode() is inherited, it is registered where it is declared
+		members.record(ReflectiveCall.CLASS_GETMETHOD, new Object[] { Thread.class, "hashCode", new Class<?>[0] });
+		members.record(ReflectiveCall.CLASS_GETDECLAREDMETHOD,
+				new Object[] { Thread.class, "noSuchMethod", new Class<?>[0] });
+		members.record(ReflectiveCall.CLASS_GETDECLAREDFIELD, new Object[] { Point.class, "x" });
+		members.record(ReflectiveCall.CLASS_NEWINSTANCE, new Object[] { Point.class });
+		members.record(ReflectiveCall.CLASS_GETDECLAREDETHODS, new Object[] { Point.class });
+		members.record(ReflectiveCall.CLASS_GETFIELDS, new Object[] { Point.class });
+		Map<String, ClassDescriptor> recorded = recorded(members);
+		assertEquals(Arrays.asList(MethodDescriptor.of("hashCode")), recorded.get("java.lang.Object").getMethods());
+		assertNull(recorded.get("java.lang.Thread").getMethods());
+		ClassDescriptor point = recorded.get("java.awt.Point");
+		assertTrue(point.hasFlag(Flag.allDeclaredMethods));
+		assertTrue(point.hasFlag(Flag.allPublicFields));
+		assertFalse(point.hasFlag(Flag.allDeclaredConstructors));
+		assertEquals(Arrays.asList(FieldDescriptor.of("x", false)), point.getFields());
+		assertEquals(Arrays.asList(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME)), point.getMethods());
+	}
+
+	private Map<String, ClassDescriptor> recorded(ReflectedMembers members) {
+		Map<String, ClassDescriptor> recorded = new HashMap<>();
+		members.forEach((cd) -> recorded.put(cd.getName(), cd));
+		return recorded;
+	}
+
+}
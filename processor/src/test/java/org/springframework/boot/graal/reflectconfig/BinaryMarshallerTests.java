@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Tests for {@link BinaryMarshaller}.
+ *
+ * @author Andy Clement
+ */
+public class BinaryMarshallerTests {
+
+	@Test
+	public void roundTrip() throws Exception {
+		ReflectionDescriptor metadata = new ReflectionDescriptor();
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		cd.setFlag(Flag.allDeclaredConstructors);
+		cd.setFlag(Flag.allPublicClasses);
+		cd.addFieldDescriptor(new FieldDescriptor("f", true));
+		cd.addFieldDescriptor(new FieldDescriptor("gé", false));
+		cd.addMethodDescriptor(new MethodDescriptor(MethodDescriptor.CONSTRUCTOR_NAME, null));
+		cd.addMethodDescriptor(new MethodDescriptor("m", new ArrayList<>()));
+		cd.addMethodDescriptor(new MethodDescriptor("n", Arrays.asList("a.B", "int[]")));
+		metadata.add(cd);
+		// Enough distinct names for indexes to need more than one varint byte
+		for (int i = 0; i < 300; i++) {
+			ClassDescriptor other = ClassDescriptor.of("other.Type" + i);
+			other.addMethodDescriptor(new MethodDescriptor("m" + i, Collections.singletonList("a.B")));
+			metadata.add(other);
+		}
+		ReflectionDescriptor read = roundTrip(metadata);
+		assertEquals(metadata.getClassDescriptors(), read.getClassDescriptors());
+	}
+
+	@Test
+	public void defaultsSnapshotMatchesJson() throws Exception {
+		ReflectionDescriptor json = JsonMarshaller.read(new ByteArrayInputStream(JsonMarshallerTests.readDefaults()));
+		try (InputStream binary = getClass().getClassLoader().getResourceAsStream("reflect.defaults.bin")) {
+			assertNotNull("reflect.defaults.bin should be generated by the build", binary);
+			assertEquals(json.getClassDescriptors(), BinaryMarshaller.read(binary).getClassDescriptors());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherContent() throws Exception {
+		BinaryMarshaller.read(new ByteArrayInputStream("[]".getBytes("UTF-8")));
+	}
+
+	@Test
+	public void corruptContentIsRejected() throws Exception {
+		ReflectionDescriptor metadata = new ReflectionDescriptor();
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		cd.addFieldDescriptor(new FieldDescriptor("f", true));
+		cd.addMethodDescriptor(new MethodDescriptor("m", Arrays.asList("a.B", "int")));
+		metadata.add(cd);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(metadata, bytes);
+		byte[] valid = bytes.toByteArray();
+		// Every damaged byte either still decodes or is reported as an IOException
+		for (int i = 0; i < valid.length; i++) {
+			for (int value : new int[] { 0x00, 0x7F, 0x80, 0xFF }) {
+				byte[] corrupt = valid.clone();
+				corrupt[i] = (byte) value;
+				try {
+					BinaryMarshaller.read(new ByteArrayInputStream(corrupt));
+				}
+				catch (IOException ex) {
+					// expected for most of them
+				}
+				catch (RuntimeException ex) {
+					fail("Byte " + i + " set to " + value + " gave " + ex);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void smallerThanJson() throws Exception {
+		byte[] json = JsonMarshallerTests.readDefaults();
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(JsonMarshaller.read(new ByteArrayInputStream(json)), binary);
+		assertTrue(binary.size() < json.length / 2);
+	}
+
+	private ReflectionDescriptor roundTrip(ReflectionDescriptor metadata) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(metadata, bytes);
+		return BinaryMarshaller.read(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Tests for {@link ClassDescriptor}.
+ *
+ * @author Andy Clement
+ */
+public class ClassDescriptorTests {
+
+	@Test
+	public void mergeEmptyDescriptor() {
+		ClassDescriptor empty = ClassDescriptor.of("a.B");
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		cd.merge(empty);
+		empty.merge(empty);
+		assertNull(cd.getFlags());
+		assertNull(cd.getFields());
+		assertNull(cd.getMethods());
+		assertNull(cd.getMethodDescriptor("m"));
+		assertNull(cd.getFieldDescriptor("f"));
+	}
+
+	@Test
+	public void mergeKeepsOrderAndCombinesDuplicates() {
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		cd.addFieldDescriptor(new FieldDescriptor("f", false));
+		cd.addMethodDescriptor(MethodDescriptor.of("m", "int"));
+		ClassDescriptor other = ClassDescriptor.of("a.B");
+		other.setFlag(Flag.allPublicMethods);
+		other.addFieldDescriptor(new FieldDescriptor("g", false));
+		other.addFieldDescriptor(new FieldDescriptor("f", true));
+		other.addMethodDescriptor(MethodDescriptor.of("m", "long"));
+		other.addMethodDescriptor(MethodDescriptor.of("m", "int"));
+		other.addMethodDescriptor(new MethodDescriptor("m", null));
+		cd.merge(other);
+		assertTrue(cd.getFlags().contains(Flag.allPublicMethods));
+		assertEquals(2, cd.getFields().size());
+		assertEquals("f", cd.getFields().get(0).getName());
+		assertTrue(cd.getFieldDescriptor("f").isAllowWrite());
+		assertEquals(Arrays.asList(MethodDescriptor.of("m", "int"), MethodDescriptor.of("m", "long"),
+				new MethodDescriptor("m", null)), cd.getMethods());
+	}
+
+	@Test
+	public void flagsView() {
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		assertNull(cd.getFlags());
+		cd.setFlag(Flag.allPublicClasses);
+		cd.setFlag(Flag.allDeclaredConstructors);
+		Set<Flag> flags = cd.getFlags();
+		assertEquals(EnumSet.of(Flag.allDeclaredConstructors, Flag.allPublicClasses), flags);
+		assertEquals(Arrays.asList(Flag.allDeclaredConstructors, Flag.allPublicClasses), new ArrayList<>(flags));
+		ClassDescriptor other = ClassDescriptor.of("a.B");
+		other.setFlag(Flag.allDeclaredMethods);
+		cd.merge(other);
+		assertEquals(3, flags.size());
+		assertTrue(cd.hasFlag(Flag.allDeclaredMethods));
+		assertFalse(cd.hasFlag(Flag.allPublicMethods));
+	}
+
+	@Test
+	public void findMethodsAmongOverloads() {
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		cd.addMethodDescriptor(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME));
+		cd.addMethodDescriptor(MethodDescriptor.of("m", "int"));
+		cd.addMethodDescriptor(MethodDescriptor.of("m", "int", "java.lang.String"));
+		assertSame(cd.getMethods().get(0), cd.getMethodDescriptor(MethodDescriptor.CONSTRUCTOR_NAME));
+		assertSame(cd.getMethods().get(2), cd.getMethodDescriptor("m", "int", "java.lang.String"));
+		assertNull(cd.getMethodDescriptor("m"));
+		assertNull(cd.getMethodDescriptor("m", "long"));
+	}
+
+	@Test
+	public void mergeLargeDescriptors() {
+		ClassDescriptor cd = ClassDescriptor.of("a.B");
+		ClassDescriptor other = ClassDescriptor.of("a.B");
+		for (int i = 0; i < 50000; i++) {
+			cd.addMethodDescriptor(MethodDescriptor.of("m" + i, "int"));
+			other.addMethodDescriptor(MethodDescriptor.of("m" + i, "int"));
+			other.addMethodDescriptor(MethodDescriptor.of("m" + i, "long"));
+			other.addFieldDescriptor(new FieldDescriptor("f" + i, false));
+		}
+		// Quadratic if the members are not indexed
+		cd.merge(other);
+		assertEquals(100000, cd.getMethods().size());
+		assertEquals(50000, cd.getFields().size());
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Tests for {@link ConfigurationMinimizer}.
+ *
+ * @author Andy Clement
+ */
+public class ConfigurationMinimizerTests {
+
+	@Test
+	public void redundantEntriesAreRemoved() throws Exception {
+		ReflectionDescriptor metadata = ReflectionDescriptor.of("["
+				+ "{\"name\":\"a.A\",\"allDeclaredConstructors\":true,\"allPublicConstructors\":true,"
+				+ "\"methods\":[{\"name\":\"<init>\",\"parameterTypes\":[]},{\"name\":\"m\",\"parameterTypes\":[]}]},"
+				+ "{\"name\":\"a.B\",\"allDeclaredMethods\":true,\"allPublicMethods\":true,\"allPublicClasses\":true,"
+				+ "\"fields\":[{\"name\":\"f\"}],"
+				+ "\"methods\":[{\"name\":\"<init>\",\"parameterTypes\":[]},{\"name\":\"m\",\"parameterTypes\":[]}]},"
+				+ "{\"name\":\"a.C\",\"allDeclaredMethods\":true,\"methods\":[{\"name\":\"inheritedMaybe\"}]},"
+				+ "{\"name\":\"a.A\",\"methods\":[{\"name\":\"<init>\",\"parameterTypes\":[\"int\"]}]}]");
+		ConfigurationMinimizer minimizer = new ConfigurationMinimizer(true);
+		ReflectionDescriptor minimized = minimizer.minimize(metadata);
+		assertEquals(3, minimized.getClassDescriptors().size());
+		ClassDescriptor a = minimized.getClassDescriptor("a.A");
+		assertTrue(a.hasFlag(Flag.allDeclaredConstructors));
+		assertFalse(a.hasFlag(Flag.allPublicConstructors));
+		assertEquals(1, a.getMethods().size());
+		assertEquals("m", a.getMethods().get(0).getName());
+		ClassDescriptor b = minimized.getClassDescriptor("a.B");
+		assertEquals(1, b.getMethods().size());
+		assertEquals(MethodDescriptor.CONSTRUCTOR_NAME, b.getMethods().get(0).getName());
+		assertEquals(1, b.getFields().size());
+		assertTrue(b.hasFlag(Flag.allPublicClasses));
+		assertEquals(1, minimized.getClassDescriptor("a.C").getMethods().size());
+		assertEquals(1, minimizer.getRemovedClasses());
+		assertEquals(3, minimizer.getRemovedMembers());
+		assertEquals(1, minimizer.getRemovedFlags());
+		assertEquals(size(metadata) - size(minimized), minimizer.getRemovedBytes());
+		assertTrue(minimizer.getRemovedBytes() > 0);
+		// The input is left as it was
+		assertEquals(4, metadata.getClassDescriptors().size());
+		assertEquals(2, metadata.getClassDescriptors().get(0).getMethods().size());
+	}
+
+	@Test
+	public void fieldsCoveredByBothFieldFlagsAreRemoved() throws Exception {
+		ReflectionDescriptor metadata = ReflectionDescriptor.of("["
+				+ "{\"name\":\"a.A\",\"allDeclaredFields\":true,\"allPublicFields\":true,\"fields\":[{\"name\":\"f\"}]},"
+				+ "{\"name\":\"a.B\",\"allDeclaredFields\":true,\"fields\":[{\"name\":\"inheritedMaybe\"}]},"
+				+ "{\"name\":\"a.C\",\"allDeclaredFields\":true,\"allPublicFields\":true,"
+				+ "\"fields\":[{\"name\":\"f\"},{\"name\":\"w\",\"allowWrite\":true}]}]");
+		ReflectionDescriptor minimized = new ConfigurationMinimizer().minimize(metadata);
+		assertNull(minimized.getClassDescriptor("a.A").getFields());
+		assertTrue(minimized.getClassDescriptor("a.A").hasFlag(Flag.allPublicFields));
+		assertEquals(1, minimized.getClassDescriptor("a.B").getFields().size());
+		// The flags do not give write access
+		assertEquals(Arrays.asList(FieldDescriptor.of("w", true)), minimized.getClassDescriptor("a.C").getFields());
+	}
+
+	@Test
+	public void defaults() throws Exception {
+		ReflectionDescriptor metadata = JsonMarshaller.read(new ByteArrayInputStream(JsonMarshallerTests.readDefaults()));
+		ConfigurationMinimizer minimizer = new ConfigurationMinimizer();
+		ReflectionDescriptor minimized = minimizer.minimize(metadata);
+		// CommonAnnotationBeanPostProcessor is listed twice, nothing else is redundant
+		assertEquals(1, minimizer.getRemovedClasses());
+		assertEquals(1, minimizer.getRemovedMembers());
+		assertEquals(0, minimizer.getRemovedFlags());
+		// Measuring the JSON is only done on request
+		assertEquals(-1, minimizer.getRemovedBytes());
+		ConfigurationMinimizer again = new ConfigurationMinimizer(true);
+		assertEquals(minimized.getClassDescriptors(), again.minimize(minimized).getClassDescriptors());
+		assertEquals(0, again.getRemovedBytes());
+		assertNull(new ConfigurationMinimizer().minimize(new ReflectionDescriptor()).getClassDescriptor("a.A"));
+	}
+
+	private long size(ReflectionDescriptor metadata) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new JsonMarshaller().write(metadata, out);
+		return out.size();
+	}
+
+}
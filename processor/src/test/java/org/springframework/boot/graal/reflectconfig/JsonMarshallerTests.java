@@ -17,14 +17,22 @@
 package org.springframework.boot.graal.reflectconfig;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
+import org.springframework.boot.configurationprocessor.json.JSONArray;
+import org.springframework.boot.configurationprocessor.json.JSONException;
 import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
 
 /**
@@ -73,4 +81,76 @@ public class JsonMarshallerTests {
 		assertTrue(cd1.getFlags().contains(Flag.allDeclaredConstructors));
 	}
 
+	@Test
+	public void streamingWriterMatchesTreeRendering() throws Exception {
+		ReflectionDescriptor metadata = new ReflectionDescriptor();
+		ClassDescriptor cd = ClassDescriptor.of("a.B$C");
+		cd.setFlag(Flag.allPublicMethods);
+		cd.setFlag(Flag.allDeclaredConstructors);
+		cd.addFieldDescriptor(new FieldDescriptor("f", false));
+		cd.addFieldDescriptor(new FieldDescriptor("g\"/\u0001", true));
+		cd.addMethodDescriptor(new MethodDescriptor(MethodDescriptor.CONSTRUCTOR_NAME, null));
+		List<String> parameterTypes = new ArrayList<>();
+		parameterTypes.add("int[]");
+		parameterTypes.add("java.lang.String");
+		cd.addMethodDescriptor(new MethodDescriptor("m", parameterTypes));
+		metadata.add(cd);
+		metadata.add(ClassDescriptor.of("plain.Type"));
+		JsonMarshaller marshaller = new JsonMarshaller();
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		marshaller.write(metadata, streamed);
+		assertEquals(JsonMarshaller.toJsonArray(metadata).toString(2), streamed.toString("UTF-8"));
+		ByteArrayOutputStream compact = new ByteArrayOutputStream();
+		marshaller.write(metadata, compact, 0);
+		assertEquals(JsonMarshaller.toJsonArray(metadata).toString(), compact.toString("UTF-8"));
+		ByteArrayOutputStream empty = new ByteArrayOutputStream();
+		marshaller.write(new ReflectionDescriptor(), empty);
+		assertEquals("[]", empty.toString("UTF-8"));
+	}
+
+	@Test
+	public void streamingReaderMatchesTreeReading() throws Exception {
+		byte[] defaults = readDefaults();
+		ReflectionDescriptor tree = JsonMarshaller.read(new JSONArray(new String(defaults, StandardCharsets.UTF_8)));
+		ReflectionDescriptor streamed = JsonMarshaller.read(new ByteArrayInputStream(defaults));
+		assertFalse(tree.isEmpty());
+		assertEquals(tree.getClassDescriptors(), streamed.getClassDescriptors());
+	}
+
+	@Test
+	public void streamingReaderIsLenient() throws Exception {
+		String json = "[{\"name\":\"a.B\",\"allDeclaredMethods\":\"true\",\"allPublicMethods\":false,"
+				+ "\"unknown\":{\"x\":[1,-2.5e3,null,{\"y\":true}]},\"fields\":null,"
+				+ "\"methods\":[{\"name\":\"m\\u0041\\/\",\"parameterTypes\":[\"int\"],\"other\":\"\"},"
+				+ "{\"name\":\"n\"}]},\n {\"fields\":[{\"allowWrite\":\"true\",\"name\":\"f\"}],\"name\":\"c.D\"}] ";
+		ReflectionDescriptor rd = JsonMarshaller.read(json);
+		ClassDescriptor ab = rd.getClassDescriptors().get(0);
+		assertEquals("a.B", ab.getName());
+		assertEquals(Collections.singleton(Flag.allDeclaredMethods), ab.getFlags());
+		assertNull(ab.getFields());
+		assertEquals("mA/", ab.getMethods().get(0).getName());
+		assertEquals(Collections.singletonList("int"), ab.getMethods().get(0).getParameterTypes());
+		assertNull(ab.getMethods().get(1).getParameterTypes());
+		ClassDescriptor cd = rd.getClassDescriptors().get(1);
+		assertEquals("c.D", cd.getName());
+		assertTrue(cd.getFields().get(0).isAllowWrite());
+	}
+
+	@Test(expected = JSONException.class)
+	public void streamingReaderRejectsTruncatedInput() throws Exception {
+		JsonMarshaller.read("[{\"name\":\"a.B\",\"methods\":[");
+	}
+
+	static byte[] readDefaults() throws IOException {
+		try (InputStream is = JsonMarshallerTests.class.getClassLoader().getResourceAsStream("reflect.defaults.json")) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+	}
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReflectConfigConverter}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectConfigConverterTests {
+
+	@Test
+	public void jsonToBinaryAndBack() throws Exception {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		new JsonMarshaller().write(
+				JsonMarshaller.read(new ByteArrayInputStream(JsonMarshallerTests.readDefaults())), written);
+		File dir = Files.createTempDirectory("convert").toFile();
+		File json = new File(dir, "reflect.json");
+		Files.write(json.toPath(), written.toByteArray());
+		File binary = new File(dir, "reflect.bin");
+		File backToJson = new File(dir, "reflect2.json");
+
+		assertFalse(ReflectConfigConverter.convert(json, binary));
+		try (FileInputStream in = new FileInputStream(binary)) {
+			assertTrue(ReflectConfigConverter.read(in).getClassDescriptors().size() > 0);
+		}
+		assertTrue(ReflectConfigConverter.convert(binary, backToJson));
+		assertArrayEquals(written.toByteArray(), Files.readAllBytes(backToJson.toPath()));
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+
+/**
+ * Tests for {@link ReflectionDescriptor}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectionDescriptorTests {
+
+	@Test
+	public void merge() {
+		ReflectionDescriptor rd = ReflectionDescriptor.of("[{\"name\":\"a.A\",\"allDeclaredConstructors\":true,"
+				+ "\"fields\":[{\"name\":\"f\"}],\"methods\":[{\"name\":\"m\",\"parameterTypes\":[]}]}]");
+		ReflectionDescriptor other = ReflectionDescriptor.of("[{\"name\":\"a.C\"},"
+				+ "{\"name\":\"a.A\",\"allPublicMethods\":true,\"fields\":[{\"name\":\"f\",\"allowWrite\":true}],"
+				+ "\"methods\":[{\"name\":\"m\",\"parameterTypes\":[]},{\"name\":\"n\",\"parameterTypes\":[]}]},"
+				+ "{\"name\":\"a.B\"}]");
+		rd.merge(other);
+		List<String> names = new ArrayList<>();
+		for (ClassDescriptor cd : rd.getClassDescriptors()) {
+			names.add(cd.getName());
+		}
+		assertEquals("[a.A, a.C, a.B]", names.toString());
+		ClassDescriptor a = rd.getClassDescriptor("a.A");
+		assertTrue(a.hasFlag(Flag.allDeclaredConstructors));
+		assertTrue(a.hasFlag(Flag.allPublicMethods));
+		assertTrue(a.getFieldDescriptor("f").isAllowWrite());
+		assertEquals(2, a.getMethods().size());
+		// The merged in descriptor is left as it was
+		ClassDescriptor otherA = other.getClassDescriptor("a.A");
+		assertFalse(otherA.hasFlag(Flag.allDeclaredConstructors));
+		a.getFieldDescriptor("f").setAllowWrite(false);
+		assertTrue(otherA.getFieldDescriptor("f").isAllowWrite());
+		assertTrue(rd.getClassDescriptor("a.B") != other.getClassDescriptor("a.B"));
+		assertNull(rd.getClassDescriptor("a.D"));
+	}
+
+	@Test
+	public void mergeParallelMatchesMerge() {
+		ReflectionDescriptor sequential = descriptor(0, 20000);
+		ReflectionDescriptor parallel = descriptor(0, 20000);
+		ReflectionDescriptor merged = descriptor(0, 20000);
+		ReflectionDescriptor other = descriptor(10000, 40000);
+		sequential.mergeSequentially(other);
+		parallel.mergeParallel(other);
+		// Above the threshold merge() goes parallel too
+		merged.merge(other);
+		assertEquals(40000, parallel.getClassDescriptors().size());
+		assertEquals(sequential.getClassDescriptors(), parallel.getClassDescriptors());
+		assertEquals(sequential.getClassDescriptors(), merged.getClassDescriptors());
+		assertSame(parallel.getClassDescriptors().get(20000), parallel.getClassDescriptor("a.Type20000"));
+		assertEquals(2, parallel.getClassDescriptor("a.Type15000").getMethods().size());
+	}
+
+	private ReflectionDescriptor descriptor(int from, int to) {
+		ReflectionDescriptor rd = new ReflectionDescriptor();
+		for (int i = from; i < to; i++) {
+			ClassDescriptor cd = ClassDescriptor.of("a.Type" + i);
+			cd.setFlag(from == 0 ? Flag.allDeclaredConstructors : Flag.allDeclaredMethods);
+			cd.addMethodDescriptor(MethodDescriptor.of("m" + from, "int"));
+			rd.add(cd);
+		}
+		return rd;
+	}
+
+}
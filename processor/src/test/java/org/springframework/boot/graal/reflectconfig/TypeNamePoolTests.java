@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.graal.reflectconfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TypeNamePool}.
+ *
+ * @author Andy Clement
+ */
+public class TypeNamePoolTests {
+
+	@Test
+	public void parsedDescriptorsShareNamesAndParameterLists() throws Exception {
+		ReflectionDescriptor read = JsonMarshaller.read("[{\"name\":\"a.B\",\"methods\":["
+				+ "{\"name\":\"m\",\"parameterTypes\":[\"java.lang.String\",\"a.B\"]},"
+				+ "{\"name\":\"n\",\"parameterTypes\":[\"java.lang.String\",\"a.B\"]},"
+				+ "{\"name\":\"o\",\"parameterTypes\":[\"a.B\"]}]}]");
+		ClassDescriptor cd = read.getClassDescriptors().get(0);
+		List<String> m = cd.getMethods().get(0).getParameterTypes();
+		List<String> n = cd.getMethods().get(1).getParameterTypes();
+		List<String> o = cd.getMethods().get(2).getParameterTypes();
+		assertSame(m, n);
+		assertSame(cd.getName(), m.get(1));
+		assertSame(cd.getName(), o.get(0));
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(read, binary);
+		ReflectionDescriptor fromBinary = BinaryMarshaller.read(new ByteArrayInputStream(binary.toByteArray()));
+		assertSame(m, fromBinary.getClassDescriptors().get(0).getMethods().get(0).getParameterTypes());
+	}
+
+	@Test
+	public void copiesCallerLists() {
+		List<String> parameterTypes = new ArrayList<>(Arrays.asList("pool.Copied"));
+		MethodDescriptor md = new MethodDescriptor("m", parameterTypes);
+		parameterTypes.add("int");
+		assertEquals(Arrays.asList("pool.Copied"), md.getParameterTypes());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void sharedListsAreUnmodifiable() {
+		MethodDescriptor.of("m", "pool.Unmodifiable").getParameterTypes().add("int");
+	}
+
+	@Test
+	public void nullAndEmptyParameterTypesAreKept() {
+		assertNull(new MethodDescriptor("m", null).getParameterTypes());
+		assertSame(MethodDescriptor.NO_PARAMS, new MethodDescriptor("m", new ArrayList<>()).getParameterTypes());
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+import org.springframework.boot.reflectionprocessor.ConditionEvaluator.ClassConditions;
+import org.springframework.boot.reflectionprocessor.SpringFactoriesReader.SpringFactories;
+
+/**
+ * Tests for {@link ClasspathCache}.
+ *
+ * @author Andy Clement
+ */
+public class ClasspathCacheTests {
+
+	@Test
+	public void unchangedEntriesAreReused() throws IOException {
+		File dir = Files.createTempDirectory("cache").toFile();
+		File jar = jar(dir, "lib", "a.Key=a.Type\n");
+		File other = jar(dir, "other", null);
+		List<File> classpath = Arrays.asList(jar, other);
+		File cacheFile = new File(dir, "cache/" + ClasspathCache.CACHE_FILE);
+
+		ClasspathCache cache = ClasspathCache.load(cacheFile, classpath);
+		assertNull(cache.getFactories(jar));
+		assertNull(cache.getFactories(other));
+		cache.putFactories(SpringFactoriesReader.read(jar));
+		cache.putFactories(SpringFactoriesReader.read(other));
+		cache.putConditions(jar, "a.Type", new ClassConditions(Collections.singletonList("b.Required"),
+				Collections.singletonList("c.Absent"), Collections.emptyMap()));
+		cache.putAvailability("a.Type", true);
+		cache.putAvailability("b.Required", false);
+		cache.save();
+
+		cache = ClasspathCache.load(cacheFile, classpath);
+		SpringFactories factories = cache.getFactories(jar);
+		assertEquals(Collections.singletonList("a.Type"), factories.getEntries().get("a.Key"));
+		assertTrue(cache.getFactories(other).isEmpty());
+		assertEquals(Collections.singletonList("b.Required"), cache.getConditions(jar, "a.Type").getRequiredClasses());
+		assertEquals(Collections.singletonList("c.Absent"), cache.getConditions(jar, "a.Type").getMissingClasses());
+		assertEquals(Boolean.TRUE, cache.getAvailability("a.Type"));
+		assertEquals(Boolean.FALSE, cache.getAvailability("b.Required"));
+		assertEquals(2, cache.getEntryHits());
+		cache.save();
+
+		// A changed jar is re-read and availability results can no longer be trusted
+		assertTrue(other.setLastModified(other.lastModified() - 10_000));
+		cache = ClasspathCache.load(cacheFile, classpath);
+		assertEquals(Collections.singletonList("a.Type"), cache.getFactories(jar).getEntries().get("a.Key"));
+		assertNull(cache.getFactories(other));
+		assertEquals(1, cache.getEntryHits());
+		assertEquals(1, cache.getEntryMisses());
+		assertNull(cache.getAvailability("a.Type"));
+	}
+
+	private static File jar(File dir, String name, String factories) throws IOException {
+		File jar = new File(dir, name + ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			out.putNextEntry(new ZipEntry(factories != null ? SpringFactoriesReader.SPRING_FACTORIES : "META-INF/other.txt"));
+			if (factories != null) {
+				out.write(factories.getBytes(StandardCharsets.ISO_8859_1));
+			}
+			out.closeEntry();
+		}
+		return jar;
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.springframework.boot.reflectionprocessor.ConditionEvaluator.ClassConditions;
+
+/**
+ * Tests for {@link ConditionEvaluator}.
+ *
+ * @author Andy Clement
+ */
+public class ConditionEvaluatorTests {
+
+	private static final String ON_CLASS = "Lorg/springframework/boot/autoconfigure/condition/ConditionalOnClass;";
+
+	private static final String ON_MISSING_CLASS = "Lorg/springframework/boot/autoconfigure/condition/ConditionalOnMissingClass;";
+
+	private static final String CONFIGURATION = "Lorg/springframework/context/annotation/Configuration;";
+
+	@Test
+	public void readsTypeAndNestedConditions() throws IOException {
+		File entry = Files.createTempDirectory("conditions").toFile();
+
+		ClassWriter outer = classWriter("a/AutoConfiguration");
+		AnnotationVisitor onClass = outer.visitAnnotation(ON_CLASS, true);
+		AnnotationVisitor value = onClass.visitArray("value");
+		value.visit(null, Type.getObjectType("x/Required"));
+		value.visitEnd();
+		AnnotationVisitor name = onClass.visitArray("name");
+		name.visit(null, "x.RequiredByName");
+		name.visitEnd();
+		onClass.visitEnd();
+		outer.visitInnerClass("a/AutoConfiguration$Nested", "a/AutoConfiguration", "Nested",
+				Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+		outer.visitInnerClass("a/AutoConfiguration$Helper", "a/AutoConfiguration", "Helper",
+				Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC);
+		write(entry, "a/AutoConfiguration", outer);
+
+		ClassWriter nested = classWriter("a/AutoConfiguration$Nested");
+		nested.visitAnnotation(CONFIGURATION, true).visitEnd();
+		AnnotationVisitor onMissingClass = nested.visitAnnotation(ON_MISSING_CLASS, true);
+		AnnotationVisitor missing = onMissingClass.visitArray("value");
+		missing.visit(null, "x.Absent");
+		missing.visitEnd();
+		onMissingClass.visitEnd();
+		write(entry, "a/AutoConfiguration$Nested", nested);
+
+		// Not a configuration class, so not of interest
+		write(entry, "a/AutoConfiguration$Helper", classWriter("a/AutoConfiguration$Helper"));
+
+		try (ConditionEvaluator evaluator = new ConditionEvaluator(Collections.singletonList(entry))) {
+			ClassConditions conditions = evaluator.read(null, "a.AutoConfiguration");
+			assertEquals(Arrays.asList("x.Required", "x.RequiredByName"), conditions.getRequiredClasses());
+			assertEquals(Collections.emptyList(), conditions.getMissingClasses());
+			assertEquals(Collections.singleton("a.AutoConfiguration$Nested"),
+					conditions.getNestedConfigurations().keySet());
+			ClassConditions nestedConditions = conditions.getNestedConfigurations().get("a.AutoConfiguration$Nested");
+			assertEquals(Collections.emptyList(), nestedConditions.getRequiredClasses());
+			assertEquals(Collections.singletonList("x.Absent"), nestedConditions.getMissingClasses());
+			assertNull(evaluator.read(entry, "a.Unknown"));
+		}
+	}
+
+	@Test
+	public void nestedClassConditionsUseCanonicalNames() throws IOException {
+		File entry = Files.createTempDirectory("conditions").toFile();
+		ClassWriter cw = classWriter("a/NestedAutoConfiguration");
+		AnnotationVisitor onClass = cw.visitAnnotation(ON_CLASS, true);
+		AnnotationVisitor value = onClass.visitArray("value");
+		value.visit(null, Type.getObjectType("x/Outer$Inner"));
+		value.visitEnd();
+		onClass.visitEnd();
+		AnnotationVisitor onMissingClass = cw.visitAnnotation(ON_MISSING_CLASS, true);
+		AnnotationVisitor name = onMissingClass.visitArray("value");
+		name.visit(null, "x.Outer$Absent");
+		name.visitEnd();
+		onMissingClass.visitEnd();
+		write(entry, "a/NestedAutoConfiguration", cw);
+
+		try (ConditionEvaluator evaluator = new ConditionEvaluator(Collections.singletonList(entry))) {
+			ClassConditions conditions = evaluator.read(entry, "a.NestedAutoConfiguration");
+			assertEquals(Collections.singletonList("x.Outer.Inner"), conditions.getRequiredClasses());
+			assertEquals(Collections.singletonList("x.Outer.Absent"), conditions.getMissingClasses());
+		}
+	}
+
+	@Test
+	public void classFilesTooRecentToParseHaveUnknownConditions() throws IOException {
+		File entry = Files.createTempDirectory("conditions").toFile();
+		ClassWriter cw = classWriter("a/RecentAutoConfiguration");
+		cw.visitAnnotation(ON_CLASS, true).visitEnd();
+		write(entry, "a/RecentAutoConfiguration", cw);
+		// Major version 66 (Java 22) is beyond what ASM 7 can read
+		File classFile = new File(entry, "a/RecentAutoConfiguration.class");
+		byte[] bytes = Files.readAllBytes(classFile.toPath());
+		bytes[7] = 66;
+		Files.write(classFile.toPath(), bytes);
+
+		try (ConditionEvaluator evaluator = new ConditionEvaluator(Collections.singletonList(entry))) {
+			assertSame(ClassConditions.UNKNOWN, evaluator.read(entry, "a.RecentAutoConfiguration"));
+		}
+	}
+
+	private ClassWriter classWriter(String name) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+		return cw;
+	}
+
+	private void write(File entry, String name, ClassWriter cw) throws IOException {
+		cw.visitEnd();
+		File file = new File(entry, name + ".class");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), cw.toByteArray());
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.BinaryMarshaller;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.JsonMarshaller;
+import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Tests for {@link DefaultsSnapshot}.
+ *
+ * @author Andy Clement
+ */
+public class DefaultsSnapshotTests {
+
+	@Test
+	public void corruptBinaryFallsBackToJson() throws IOException {
+		ReflectionDescriptor defaults = new ReflectionDescriptor();
+		ClassDescriptor cd = ClassDescriptor.of("a.Default");
+		cd.addMethodDescriptor(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME));
+		defaults.add(cd);
+		File dir = Files.createTempDirectory("defaults").toFile();
+		try (OutputStream json = new FileOutputStream(new File(dir, DefaultsSnapshot.DEFAULTS_JSON))) {
+			new JsonMarshaller().write(defaults, json);
+		}
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		new BinaryMarshaller().write(defaults, binary);
+		byte[] bytes = binary.toByteArray();
+		// The class name index, just after the string table, now points past its end
+		bytes[bytes.length - 6] = 0x7F;
+		Files.write(new File(dir, DefaultsSnapshot.DEFAULTS_BINARY).toPath(), bytes);
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, null)) {
+			assertEquals(defaults.getClassDescriptors(), DefaultsSnapshot.load(classLoader).getClassDescriptors());
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Tests that an incremental build, where only some sources are recompiled, keeps the
+ * descriptors contributed by the sources that were not.
+ *
+ * @author Andy Clement
+ */
+public class IncrementalBuildTests {
+
+	@Test
+	public void contributionsOfUnchangedSourcesAreKept() throws IOException {
+		File dir = Files.createTempDirectory("incremental").toFile();
+		TestCompiler compiler = new TestCompiler(dir);
+		File configuration = compiler.annotation("org.springframework.context.annotation.Configuration");
+		File one = compiler.source("app/One.java",
+				"package app;\n@org.springframework.context.annotation.Configuration\npublic class One {}\n");
+		File two = compiler.source("app/Two.java",
+				"package app;\n@org.springframework.context.annotation.Configuration\npublic class Two {}\n");
+
+		assertTrue(compiler.compile(configuration, one, two));
+		ReflectionDescriptor full = compiler.readReflectJson();
+		assertTrue(full.hasClassDescriptor("app.One"));
+		assertTrue(full.hasClassDescriptor("app.Two"));
+		assertTrue(new File(dir, "graal-processor/classes/" + ContributionIndex.INDEX_FILE).exists());
+
+		// Only One is recompiled, Two is still on the classpath
+		assertTrue(compiler.compile(one));
+		ReflectionDescriptor incremental = compiler.readReflectJson();
+		assertTrue(incremental.hasClassDescriptor("app.One"));
+		assertTrue(incremental.hasClassDescriptor("app.Two"));
+		assertEquals(full.getClassDescriptors().size(), incremental.getClassDescriptors().size());
+
+		// Two deleted, its contribution goes too
+		assertTrue(new File(compiler.getClasses(), "app/Two.class").delete());
+		assertTrue(compiler.compile(one));
+		ReflectionDescriptor afterDelete = compiler.readReflectJson();
+		assertTrue(afterDelete.hasClassDescriptor("app.One"));
+		assertFalse(afterDelete.hasClassDescriptor("app.Two"));
+	}
+
+	@Test
+	public void classpathContributionsAreNotReusedWhenASourceSatisfiesACondition() throws IOException {
+		File dir = Files.createTempDirectory("incremental").toFile();
+		File lib = new File(dir, "lib");
+		writeAutoConfiguration(lib, "lib/LibAutoConfiguration", "app/Feature");
+		File factories = new File(lib, SpringFactoriesReader.SPRING_FACTORIES);
+		factories.getParentFile().mkdirs();
+		Files.write(factories.toPath(),
+				"org.springframework.boot.autoconfigure.EnableAutoConfiguration=lib.LibAutoConfiguration\n"
+						.getBytes(StandardCharsets.ISO_8859_1));
+		TestCompiler compiler = new TestCompiler(dir).option(ReflectiveAccessAnnotationProcessor.CLASSPATH,
+				lib.getAbsolutePath()).classpath(lib);
+		File configuration = compiler.annotation("org.springframework.context.annotation.Configuration");
+		File one = compiler.source("app/One.java",
+				"package app;\n@org.springframework.context.annotation.Configuration\npublic class One {}\n");
+
+		assertTrue(compiler.compile(configuration, one));
+		assertTrue(compiler.readReflectJson().hasClassDescriptor("app.One"));
+		assertFalse(compiler.readReflectJson().hasClassDescriptor("lib.LibAutoConfiguration"));
+
+		// The classpath is unchanged but the condition is now satisfied by a source
+		File feature = compiler.source("app/Feature.java", "package app;\npublic class Feature {}\n");
+		assertTrue(compiler.compile(feature));
+		ReflectionDescriptor incremental = compiler.readReflectJson();
+		assertTrue(incremental.hasClassDescriptor("app.One"));
+		assertTrue(incremental.hasClassDescriptor("lib.LibAutoConfiguration"));
+	}
+
+	@Test
+	public void typesInTheClassOutputAreNotCachedAsAvailable() throws IOException {
+		File dir = Files.createTempDirectory("incremental").toFile();
+		File lib = new File(dir, "lib");
+		writeAutoConfiguration(lib, "lib/LibAutoConfiguration", "app/Feature");
+		File factories = new File(lib, SpringFactoriesReader.SPRING_FACTORIES);
+		factories.getParentFile().mkdirs();
+		Files.write(factories.toPath(),
+				"org.springframework.boot.autoconfigure.EnableAutoConfiguration=lib.LibAutoConfiguration\n"
+						.getBytes(StandardCharsets.ISO_8859_1));
+		TestCompiler compiler = new TestCompiler(dir).option(ReflectiveAccessAnnotationProcessor.CLASSPATH,
+				lib.getAbsolutePath()).classpath(lib);
+		File configuration = compiler.annotation("org.springframework.context.annotation.Configuration");
+		File one = compiler.source("app/One.java",
+				"package app;\n@org.springframework.context.annotation.Configuration\npublic class One {}\n");
+		File feature = compiler.source("app/Feature.java", "package app;\npublic class Feature {}\n");
+		assertTrue(compiler.compile(configuration, one, feature));
+		assertTrue(compiler.readReflectJson().hasClassDescriptor("lib.LibAutoConfiguration"));
+
+		// Feature now comes from the class output, not from a source
+		assertTrue(compiler.compile(one));
+		assertTrue(compiler.readReflectJson().hasClassDescriptor("lib.LibAutoConfiguration"));
+
+		// Its source deleted, Feature is gone although the classpath is unchanged
+		assertTrue(new File(compiler.getClasses(), "app/Feature.class").delete());
+		assertTrue(compiler.compile(one));
+		ReflectionDescriptor afterDelete = compiler.readReflectJson();
+		assertTrue(afterDelete.hasClassDescriptor("app.One"));
+		assertFalse(afterDelete.hasClassDescriptor("lib.LibAutoConfiguration"));
+	}
+
+	private void writeAutoConfiguration(File entry, String name, String requiredClass) throws IOException {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+		AnnotationVisitor onClass = cw.visitAnnotation(
+				"Lorg/springframework/boot/autoconfigure/condition/ConditionalOnClass;", true);
+		AnnotationVisitor value = onClass.visitArray("value");
+		value.visit(null, Type.getObjectType(requiredClass));
+		value.visitEnd();
+		onClass.visitEnd();
+		cw.visitEnd();
+		File file = new File(entry, name + ".class");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), cw.toByteArray());
+	}
+
+}
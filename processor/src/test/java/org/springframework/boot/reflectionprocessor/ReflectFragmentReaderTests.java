@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Tests for {@link ReflectFragmentReader}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectFragmentReaderTests {
+
+	@Test
+	public void fragmentsAreMergedInClasspathOrder() throws IOException {
+		File dir = Files.createTempDirectory("fragments").toFile();
+		File classOutput = new File(dir, "classes");
+		List<File> entries = new ArrayList<>();
+		entries.add(jar(new File(dir, "a.jar"), "[{\"name\":\"a.A\",\"allDeclaredConstructors\":true}]"));
+		entries.add(new File(dir, "missing.jar"));
+		entries.add(jar(new File(dir, "none.jar"), null));
+		entries.add(directory(new File(dir, "b"), "[{\"name\":\"b.B\"},{\"name\":\"a.A\",\"allDeclaredMethods\":true}]"));
+		entries.add(jar(new File(dir, "broken.jar"), "[{\"name\":"));
+		entries.add(directory(classOutput, "[{\"name\":\"previous.Output\"}]"));
+		for (int i = 0; i < 10; i++) {
+			entries.add(jar(new File(dir, "c" + i + ".jar"), "[{\"name\":\"c.C" + i + "\"},{\"name\":\"a.A\"}]"));
+		}
+		ReflectFragmentReader sequential = new ReflectFragmentReader(false, classOutput);
+		ReflectionDescriptor fragments = sequential.read(entries);
+		assertEquals(12, sequential.getFragmentCount());
+		assertEquals(Arrays.asList("a.A", "b.B", "c.C0"), names(fragments).subList(0, 3));
+		assertEquals(12, fragments.getClassDescriptors().size());
+		ClassDescriptor a = fragments.getClassDescriptor("a.A");
+		assertTrue(a.hasFlag(Flag.allDeclaredConstructors));
+		assertTrue(a.hasFlag(Flag.allDeclaredMethods));
+		assertFalse(fragments.hasClassDescriptor("previous.Output"));
+		ReflectFragmentReader parallel = new ReflectFragmentReader(true, classOutput);
+		assertEquals(fragments.getClassDescriptors(), parallel.read(entries).getClassDescriptors());
+		assertEquals(12, parallel.getFragmentCount());
+	}
+
+	private List<String> names(ReflectionDescriptor rd) {
+		List<String> names = new ArrayList<>();
+		for (ClassDescriptor cd : rd.getClassDescriptors()) {
+			names.add(cd.getName());
+		}
+		return names;
+	}
+
+	private File jar(File file, String reflectJson) throws IOException {
+		try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+			jar.putNextEntry(new ZipEntry("a/A.class"));
+			jar.closeEntry();
+			if (reflectJson != null) {
+				jar.putNextEntry(new ZipEntry(ReflectStore.METADATA_PATH));
+				jar.write(reflectJson.getBytes(StandardCharsets.UTF_8));
+				jar.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	private File directory(File dir, String reflectJson) throws IOException {
+		File file = new File(dir, ReflectStore.METADATA_PATH);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), reflectJson.getBytes(StandardCharsets.UTF_8));
+		return dir;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
+
+/**
+ * Tests for {@link ReflectionInfoCollector}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectionInfoCollectorTests {
+
+	private static final int DESCRIPTOR_COUNT = 50_000;
+
+	private static final int DISTINCT_TYPES = 40_000;
+
+	@Test
+	public void mergeKeepsInsertionOrderAndCombinesDuplicates() {
+		TestProcessingEnvironment.run(env -> {
+			ReflectionInfoCollector collector = new ReflectionInfoCollector(env, null);
+			collector.mergeClassDescriptor(withFlag("b.B", Flag.allDeclaredConstructors));
+			collector.mergeClassDescriptor(withFlag("a.A", Flag.allDeclaredMethods));
+			ClassDescriptor withCtor = ClassDescriptor.of("b.B");
+			withCtor.addMethodDescriptor(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME));
+			collector.mergeClassDescriptor(withCtor);
+			List<ClassDescriptor> cds = collector.getMetadata().getClassDescriptors();
+			assertEquals(2, cds.size());
+			assertEquals("b.B", cds.get(0).getName());
+			assertEquals("a.A", cds.get(1).getName());
+			assertTrue(cds.get(0).getFlags().contains(Flag.allDeclaredConstructors));
+			assertEquals(1, cds.get(0).getMethods().size());
+		});
+	}
+
+	@Test
+	public void mergeCombinesManyDescriptors() {
+		TestProcessingEnvironment.run(env -> {
+			ReflectionInfoCollector collector = new ReflectionInfoCollector(env, null);
+			for (ClassDescriptor cd : descriptors(DESCRIPTOR_COUNT, DISTINCT_TYPES)) {
+				collector.mergeClassDescriptor(cd);
+			}
+			List<ClassDescriptor> cds = collector.getMetadata().getClassDescriptors();
+			assertEquals(DISTINCT_TYPES, cds.size());
+			assertEquals(typename(0), cds.get(0).getName());
+			assertEquals(typename(DISTINCT_TYPES - 1), cds.get(DISTINCT_TYPES - 1).getName());
+			// Types listed twice have both flags, the others only the first
+			ClassDescriptor merged = collector.findClassDescriptor(typename(0));
+			assertTrue(merged.hasFlag(Flag.allDeclaredConstructors));
+			assertTrue(merged.hasFlag(Flag.allDeclaredMethods));
+			ClassDescriptor single = collector.findClassDescriptor(typename(DISTINCT_TYPES - 1));
+			assertTrue(single.hasFlag(Flag.allDeclaredConstructors));
+			assertFalse(single.hasFlag(Flag.allDeclaredMethods));
+			assertNull(collector.findClassDescriptor(typename(DISTINCT_TYPES)));
+		});
+	}
+
+	private static List<ClassDescriptor> descriptors(int count, int distinct) {
+		List<ClassDescriptor> cds = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			cds.add(withFlag(typename(i % distinct),
+					i < distinct ? Flag.allDeclaredConstructors : Flag.allDeclaredMethods));
+		}
+		return cds;
+	}
+
+	private static ClassDescriptor withFlag(String typename, Flag flag) {
+		ClassDescriptor cd = ClassDescriptor.of(typename);
+		cd.setFlag(flag);
+		return cd;
+	}
+
+	private static String typename(int i) {
+		return String.format("org.springframework.boot.autoconfigure.sample.Sample%05dAutoConfiguration", i);
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor;
+import org.springframework.boot.graal.reflectconfig.ClassDescriptor.Flag;
+import org.springframework.boot.graal.reflectconfig.MethodDescriptor;
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+import org.springframework.boot.graal.reflectconfig.TypeNamePool;
+
+/**
+ * Tests for {@link ReflectiveAccessAnnotationProcessor}.
+ *
+ * @author Andy Clement
+ */
+public class ReflectiveAccessAnnotationProcessorTests {
+
+	@Test
+	public void stereotypesAreDiscovered() throws IOException {
+		TestCompiler compiler = new TestCompiler(Files.createTempDirectory("stereotypes").toFile());
+		File[] annotations = new File[] {
+				compiler.annotation(ReflectiveAccessAnnotationProcessor.CONFIGURATION_ANNOTATION),
+				compiler.annotation(ReflectiveAccessAnnotationProcessor.RESTCONTROLLER_ANNOTATION),
+				compiler.annotation(ReflectiveAccessAnnotationProcessor.COMPONENT_ANNOTATION),
+				compiler.annotation(ReflectiveAccessAnnotationProcessor.SERVICE_ANNOTATION),
+				compiler.annotation(ReflectiveAccessAnnotationProcessor.REPOSITORY_ANNOTATION) };
+		File app = compiler.source("app/App.java", "package app;\n"
+				+ "@org.springframework.context.annotation.Configuration\n"
+				+ "public class App {\n"
+				+ "  @org.springframework.stereotype.Component static class NestedComponent {}\n"
+				+ "  static class Plain {}\n"
+				+ "}\n"
+				+ "@org.springframework.web.bind.annotation.RestController class Controller {}\n"
+				+ "@org.springframework.stereotype.Service class SomeService {}\n"
+				+ "@org.springframework.stereotype.Repository class SomeRepository {}\n");
+		File[] sources = new File[annotations.length + 1];
+		System.arraycopy(annotations, 0, sources, 0, annotations.length);
+		sources[annotations.length] = app;
+		assertTrue(compiler.compile(sources));
+		// The names of the compilation are not retained once it is over
+		assertEquals(0, TypeNamePool.get().getNameCount());
+		ReflectionDescriptor reflectJson = compiler.readReflectJson();
+		assertTrue(reflectJson.hasClassDescriptor("app.App"));
+		assertTrue(reflectJson.hasClassDescriptor("app.App$NestedComponent"));
+		assertTrue(reflectJson.hasClassDescriptor("app.Controller"));
+		assertTrue(reflectJson.hasClassDescriptor("app.SomeService"));
+		assertTrue(reflectJson.hasClassDescriptor("app.SomeRepository"));
+		assertFalse(reflectJson.hasClassDescriptor("app.App$Plain"));
+	}
+
+	@Test
+	public void metaAnnotatedStereotypesAreDiscovered() throws IOException {
+		TestCompiler compiler = new TestCompiler(Files.createTempDirectory("meta").toFile());
+		File configuration = compiler.annotation(ReflectiveAccessAnnotationProcessor.CONFIGURATION_ANNOTATION);
+		File service = compiler.annotation(ReflectiveAccessAnnotationProcessor.SERVICE_ANNOTATION);
+		File composed = compiler.source("app/BootConfiguration.java", "package app;\n"
+				+ "@org.springframework.context.annotation.Configuration\n"
+				+ "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+				+ "public @interface BootConfiguration {}\n");
+		File composedTwice = compiler.source("app/BootApplication.java", "package app;\n"
+				+ "@BootConfiguration @Other\n"
+				+ "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+				+ "public @interface BootApplication {}\n"
+				+ "@BootApplication @interface Other {}\n");
+		File app = compiler.source("app/App.java", "package app;\n"
+				+ "@BootApplication public class App {}\n"
+				+ "@BootApplication class SecondApp {}\n"
+				+ "@Other class ViaCycle {}\n"
+				+ "@org.springframework.stereotype.Service class SomeService {}\n");
+		assertTrue(compiler.compile(configuration, service, composed, composedTwice, app));
+		ReflectionDescriptor reflectJson = compiler.readReflectJson();
+		assertTrue(reflectJson.hasClassDescriptor("app.App"));
+		assertTrue(reflectJson.hasClassDescriptor("app.SecondApp"));
+		assertTrue(reflectJson.hasClassDescriptor("app.SomeService"));
+		// Other and BootApplication annotate each other, the cycle reaches Configuration
+		assertTrue(reflectJson.hasClassDescriptor("app.ViaCycle"));
+		// Annotating an annotation makes it a meta-annotation, not a component
+		assertFalse(reflectJson.hasClassDescriptor("app.BootConfiguration"));
+	}
+
+	@Test
+	public void preciseConstructors() throws IOException {
+		TestCompiler compiler = new TestCompiler(Files.createTempDirectory("constructors").toFile());
+		File autowired = compiler.annotation(ReflectiveAccessAnnotationProcessor.AUTOWIRED_ANNOTATION);
+		File library = compiler.source("lib/Library.java", "package lib;\n"
+				+ "public class Library { public static class Nested {} }\n"
+				+ "class NoArg { NoArg() {} NoArg(String s) {} }\n"
+				+ "class Single<T extends Number> { Single(java.util.List<T> l, T[] a, int i, Library.Nested n) {} }\n"
+				+ "class Injected { Injected() {} @org.springframework.beans.factory.annotation.Autowired Injected(Library l) {} }\n"
+				+ "class Ambiguous { Ambiguous(int i) {} Ambiguous(long l) {} }\n");
+		assertTrue(compiler.compile(autowired, library));
+		File factories = new File(compiler.getClasses(), SpringFactoriesReader.SPRING_FACTORIES);
+		factories.getParentFile().mkdirs();
+		Files.write(factories.toPath(),
+				("k=lib.NoArg,lib.Single,lib.Injected,lib.Ambiguous\n").getBytes(StandardCharsets.UTF_8));
+		File app = compiler.source("app/App.java", "package app;\n"
+				+ "@org.springframework.stereotype.Component public class App {}\n");
+		File component = compiler.annotation(ReflectiveAccessAnnotationProcessor.COMPONENT_ANNOTATION);
+		compiler.option(ReflectiveAccessAnnotationProcessor.CLASSPATH, compiler.getClasses().getAbsolutePath())
+				.option(ReflectiveAccessAnnotationProcessor.CONSTRUCTORS, "precise");
+		assertTrue(compiler.compile(component, app));
+		ReflectionDescriptor reflectJson = compiler.readReflectJson();
+		assertEquals(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME),
+				onlyConstructor(reflectJson.getClassDescriptor("lib.NoArg")));
+		assertEquals(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME, "java.util.List", "java.lang.Number[]", "int",
+				"lib.Library$Nested"), onlyConstructor(reflectJson.getClassDescriptor("lib.Single")));
+		assertEquals(MethodDescriptor.of(MethodDescriptor.CONSTRUCTOR_NAME, "lib.Library"),
+				onlyConstructor(reflectJson.getClassDescriptor("lib.Injected")));
+		ClassDescriptor ambiguous = reflectJson.getClassDescriptor("lib.Ambiguous");
+		assertTrue(ambiguous.hasFlag(Flag.allDeclaredConstructors));
+		assertNull(ambiguous.getMethods());
+	}
+
+	@Test
+	public void pruneUnreachableAutoConfigurations() throws IOException {
+		TestCompiler compiler = new TestCompiler(Files.createTempDirectory("prune").toFile());
+		List<File> library = new ArrayList<>();
+		library.add(compiler.annotation(ReflectiveAccessAnnotationProcessor.CONFIGURATION_ANNOTATION));
+		library.add(compiler.annotation("org.springframework.context.annotation.Bean"));
+		library.add(compiler.source("org/springframework/context/annotation/Import.java",
+				"package org.springframework.context.annotation;\n"
+						+ "public @interface Import { Class<?>[] value(); }\n"));
+		library.add(compiler.source("org/springframework/boot/autoconfigure/EnableAutoConfiguration.java",
+				"package org.springframework.boot.autoconfigure;\n"
+						+ "public @interface EnableAutoConfiguration { Class<?>[] exclude() default {}; }\n"));
+		library.add(compiler.source("org/springframework/boot/autoconfigure/SpringBootApplication.java",
+				"package org.springframework.boot.autoconfigure;\n"
+						+ "@org.springframework.context.annotation.Configuration @EnableAutoConfiguration\n"
+						+ "public @interface SpringBootApplication {\n"
+						+ "  Class<?>[] exclude() default {}; String[] excludeName() default {};\n"
+						+ "}\n"));
+		library.add(compiler.source("lib/AutoConfigureBeans.java", "package lib;\n"
+				+ "public @interface AutoConfigureBeans {}\n"));
+		library.add(compiler.source("lib/BeanHolder.java", "package lib;\n"
+				+ "@AutoConfigureBeans public class BeanHolder {}\n"));
+		library.add(compiler.source("lib/ImportedConfiguration.java", "package lib;\n"
+				+ "public class ImportedConfiguration {}\n"));
+		library.add(compiler.source("lib/ExcludedAutoConfiguration.java", "package lib;\n"
+				+ "public class ExcludedAutoConfiguration {\n"
+				+ "  @org.springframework.context.annotation.Configuration public static class Inner {}\n"
+				+ "}\n"));
+		library.add(compiler.source("lib/Library.java", "package lib;\n"
+				+ "public class Library {}\n"
+				+ "@interface AutoConfigureThing {}\n"
+				+ "interface Listener {}\n"
+				+ "class SomeListener implements Listener {}\n"
+				+ "class WebAutoConfiguration {}\n"
+				+ "class NamedAutoConfiguration {}\n"
+				+ "class ThingAutoConfiguration {}\n"
+				+ "class BeanAutoConfiguration {}\n"));
+		// The library classes are not sources of the application build
+		compiler.option(ReflectiveAccessAnnotationProcessor.INCREMENTAL, "false");
+		assertTrue(compiler.compile(library.toArray(new File[0])));
+		File factories = new File(compiler.getClasses(), SpringFactoriesReader.SPRING_FACTORIES);
+		factories.getParentFile().mkdirs();
+		Files.write(factories.toPath(), ("org.springframework.boot.autoconfigure.EnableAutoConfiguration="
+				+ "lib.WebAutoConfiguration,lib.ExcludedAutoConfiguration,lib.NamedAutoConfiguration\n"
+				+ "lib.AutoConfigureThing=lib.ThingAutoConfiguration,lib.ImportedConfiguration\n"
+				+ "lib.AutoConfigureBeans=lib.BeanAutoConfiguration\n"
+				+ "lib.Listener=lib.SomeListener\n").getBytes(StandardCharsets.UTF_8));
+		File app = compiler.source("app/App.java", "package app;\n"
+				+ "@org.springframework.boot.autoconfigure.SpringBootApplication(exclude = lib.ExcludedAutoConfiguration.class,"
+				+ " excludeName = \"lib.NamedAutoConfiguration\")\n"
+				+ "@org.springframework.context.annotation.Import(lib.ImportedConfiguration.class)\n"
+				+ "public class App {\n"
+				+ "  @org.springframework.context.annotation.Bean lib.BeanHolder holder() { return null; }\n"
+				+ "}\n");
+		compiler.option(ReflectiveAccessAnnotationProcessor.CLASSPATH, compiler.getClasses().getAbsolutePath())
+				.option(ReflectiveAccessAnnotationProcessor.PRUNE, "true");
+		assertTrue(compiler.compile(app));
+		ReflectionDescriptor reflectJson = compiler.readReflectJson();
+		assertTrue(reflectJson.hasClassDescriptor("app.App"));
+		assertTrue(reflectJson.hasClassDescriptor("lib.WebAutoConfiguration"));
+		assertTrue(reflectJson.hasClassDescriptor("lib.ImportedConfiguration"));
+		assertTrue(reflectJson.hasClassDescriptor("lib.BeanAutoConfiguration"));
+		assertTrue(reflectJson.hasClassDescriptor("lib.SomeListener"));
+		assertFalse(reflectJson.hasClassDescriptor("lib.ExcludedAutoConfiguration"));
+		assertFalse(reflectJson.hasClassDescriptor("lib.ExcludedAutoConfiguration$Inner"));
+		assertFalse(reflectJson.hasClassDescriptor("lib.NamedAutoConfiguration"));
+		assertFalse(reflectJson.hasClassDescriptor("lib.ThingAutoConfiguration"));
+	}
+
+	@Test
+	public void conditionsOfClassFilesTooRecentToParseComeFromTheCompiler() throws IOException {
+		TestCompiler compiler = new TestCompiler(Files.createTempDirectory("recent").toFile());
+		File onClass = compiler.source("org/springframework/boot/autoconfigure/condition/ConditionalOnClass.java",
+				"package org.springframework.boot.autoconfigure.condition;\n"
+						+ "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+						+ "public @interface ConditionalOnClass { Class<?>[] value() default {}; }\n");
+		File library = compiler.source("lib/Library.java", "package lib;\n"
+				+ "public class Library {}\n"
+				+ "class Missing {}\n"
+				+ "@org.springframework.boot.autoconfigure.condition.ConditionalOnClass(Missing.class)\n"
+				+ "class GuardedAutoConfiguration {}\n"
+				+ "class OpenAutoConfiguration {}\n");
+		compiler.option(ReflectiveAccessAnnotationProcessor.INCREMENTAL, "false");
+		assertTrue(compiler.compile(onClass, library));
+		assertTrue(new File(compiler.getClasses(), "lib/Missing.class").delete());
+		// The processor reads a copy with a major version beyond what ASM can parse, javac
+		// still sees the original
+		File recent = Files.createTempDirectory("recent-classpath").toFile();
+		for (String name : new String[] { "GuardedAutoConfiguration", "OpenAutoConfiguration" }) {
+			byte[] bytes = Files.readAllBytes(new File(compiler.getClasses(), "lib/" + name + ".class").toPath());
+			bytes[7] = 66;
+			File copy = new File(recent, "lib/" + name + ".class");
+			copy.getParentFile().mkdirs();
+			Files.write(copy.toPath(), bytes);
+		}
+		File factories = new File(recent, SpringFactoriesReader.SPRING_FACTORIES);
+		factories.getParentFile().mkdirs();
+		Files.write(factories.toPath(), ("org.springframework.boot.autoconfigure.EnableAutoConfiguration="
+				+ "lib.GuardedAutoConfiguration,lib.OpenAutoConfiguration\n").getBytes(StandardCharsets.UTF_8));
+		File component = compiler.annotation(ReflectiveAccessAnnotationProcessor.COMPONENT_ANNOTATION);
+		File app = compiler.source("app/App.java", "package app;\n"
+				+ "@org.springframework.stereotype.Component public class App {}\n");
+		compiler.option(ReflectiveAccessAnnotationProcessor.CLASSPATH, recent.getAbsolutePath());
+		assertTrue(compiler.compile(component, app));
+		ReflectionDescriptor reflectJson = compiler.readReflectJson();
+		assertTrue(reflectJson.hasClassDescriptor("lib.OpenAutoConfiguration"));
+		assertFalse(reflectJson.hasClassDescriptor("lib.GuardedAutoConfiguration"));
+	}
+
+	private MethodDescriptor onlyConstructor(ClassDescriptor cd) {
+		assertNull(cd.getFlags());
+		assertEquals(1, cd.getMethods().size());
+		return cd.getMethods().get(0);
+	}
+
+}
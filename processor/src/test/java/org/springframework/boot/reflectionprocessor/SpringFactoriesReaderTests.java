@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+import org.springframework.boot.reflectionprocessor.SpringFactoriesReader.SpringFactories;
+
+/**
+ * Tests for {@link SpringFactoriesReader}.
+ *
+ * @author Andy Clement
+ */
+public class SpringFactoriesReaderTests {
+
+	@Test
+	public void parallelAndSequentialReadsAgree() throws IOException {
+		File dir = Files.createTempDirectory("factories").toFile();
+		List<File> entries = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			if (i % 3 == 0) {
+				entries.add(jar(dir, "nofactories" + i, null));
+			}
+			else {
+				entries.add(jar(dir, "lib" + i, "b.Key=b.Type" + i + "\na.Key=a.Type" + i + ",\\\n a.Other" + i + "\n"));
+			}
+		}
+		entries.add(new File(dir, "missing.jar"));
+		List<SpringFactories> sequential = new SpringFactoriesReader(false).read(entries);
+		List<SpringFactories> parallel = new SpringFactoriesReader(true).read(entries);
+		assertEquals(41, sequential.size());
+		assertTrue(sequential.get(0).isEmpty());
+		assertEquals(sequential.size(), parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			assertEquals(sequential.get(i).getSource(), parallel.get(i).getSource());
+			assertEquals(sequential.get(i).getEntries(), parallel.get(i).getEntries());
+		}
+		SpringFactories first = parallel.get(1);
+		assertEquals(new File(dir, "lib1.jar"), first.getSource());
+		assertEquals(Arrays.asList("a.Key", "b.Key"), new ArrayList<>(first.getEntries().keySet()));
+		assertEquals(Arrays.asList("a.Type1", "a.Other1"), first.getEntries().get("a.Key"));
+	}
+
+	@Test
+	public void unreadableEntriesHaveAProblem() throws IOException {
+		File dir = Files.createTempDirectory("factories").toFile();
+		File corrupt = new File(dir, "corrupt.jar");
+		Files.write(corrupt.toPath(), "not a jar".getBytes(StandardCharsets.ISO_8859_1));
+		List<SpringFactories> read = new SpringFactoriesReader(false)
+				.read(Arrays.asList(corrupt, jar(dir, "lib", "a.Key=a.Type\n")));
+		assertTrue(read.get(0).isEmpty());
+		assertTrue(read.get(0).getProblem().startsWith("Unable to read " + SpringFactoriesReader.SPRING_FACTORIES));
+		assertNull(read.get(1).getProblem());
+	}
+
+	private static File jar(File dir, String name, String factories) throws IOException {
+		File jar = new File(dir, name + ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			if (factories != null) {
+				out.putNextEntry(new ZipEntry(SpringFactoriesReader.SPRING_FACTORIES));
+				out.write(factories.getBytes(StandardCharsets.ISO_8859_1));
+				out.closeEntry();
+			}
+			else {
+				out.putNextEntry(new ZipEntry("META-INF/other.txt"));
+				out.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+}
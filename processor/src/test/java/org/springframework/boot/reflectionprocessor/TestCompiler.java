@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.springframework.boot.graal.reflectconfig.ReflectionDescriptor;
+
+/**
+ * Compiles sources with the {@link ReflectiveAccessAnnotationProcessor} into a
+ * {@code classes} folder, which is also on the classpath of each compilation so that
+ * incremental builds can be simulated.
+ *
+ * @author Andy Clement
+ */
+class TestCompiler {
+
+	private final File src;
+
+	private final File classes;
+
+	private final Map<String, String> options = new LinkedHashMap<>();
+
+	private final List<File> classpath = new ArrayList<>();
+
+	TestCompiler(File dir) {
+		this.src = new File(dir, "src");
+		this.classes = new File(dir, "classes");
+		this.classes.mkdirs();
+	}
+
+	File getClasses() {
+		return this.classes;
+	}
+
+	/**
+	 * Pass a processor option to the following compilations.
+	 * @param name the option name
+	 * @param value the option value
+	 * @return this compiler
+	 */
+	TestCompiler option(String name, String value) {
+		this.options.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Add an entry to the classpath of the following compilations.
+	 * @param entry a jar or folder
+	 * @return this compiler
+	 */
+	TestCompiler classpath(File entry) {
+		this.classpath.add(entry);
+		return this;
+	}
+
+	File source(String path, String content) throws IOException {
+		File file = new File(this.src, path);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * Create the source of a runtime retained annotation type.
+	 * @param qualifiedName the annotation type
+	 * @return the source file
+	 */
+	File annotation(String qualifiedName) throws IOException {
+		int dot = qualifiedName.lastIndexOf('.');
+		return source(qualifiedName.replace('.', '/') + ".java",
+				"package " + qualifiedName.substring(0, dot) + ";\n"
+						+ "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+						+ "public @interface " + qualifiedName.substring(dot + 1) + " { String value() default \"\"; }\n");
+	}
+
+	boolean compile(File... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+			StringBuilder classpath = new StringBuilder(this.classes.getAbsolutePath());
+			this.classpath.forEach((entry) -> classpath.append(File.pathSeparator).append(entry.getAbsolutePath()));
+			List<String> options = new ArrayList<>(
+					Arrays.asList("-d", this.classes.getAbsolutePath(), "-classpath", classpath.toString()));
+			this.options.forEach((name, value) -> options.add("-A" + name + "=" + value));
+			CompilationTask task = compiler.getTask(null, fileManager, null, options, null,
+					fileManager.getJavaFileObjects(sources));
+			task.setProcessors(Collections.singletonList(new ReflectiveAccessAnnotationProcessor()));
+			return task.call();
+		}
+	}
+
+	ReflectionDescriptor readReflectJson() throws IOException {
+		return ReflectStore.readMetadata(new FileInputStream(new File(this.classes, ReflectStore.METADATA_PATH)));
+	}
+
+}
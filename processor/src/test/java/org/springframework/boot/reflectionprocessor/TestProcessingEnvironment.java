@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Gives tests access to a real javac {@link ProcessingEnvironment} by compiling a
+ * trivial source file and invoking a callback from inside the first processing round.
+ *
+ * @author Andy Clement
+ */
+final class TestProcessingEnvironment {
+
+	private TestProcessingEnvironment() {
+	}
+
+	static void run(Consumer<ProcessingEnvironment> callback) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		File outputDirectory;
+		try {
+			outputDirectory = Files.createTempDirectory("processor-tests").toFile();
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		CallbackProcessor processor = new CallbackProcessor(callback);
+		CompilationTask task = compiler.getTask(null, null, null,
+				Arrays.asList("-proc:only", "-d", outputDirectory.getAbsolutePath()), null,
+				Collections.singletonList(new SourceFile("Sample", "class Sample {}")));
+		task.setProcessors(Collections.singletonList(processor));
+		task.call();
+		if (processor.failure != null) {
+			if (processor.failure instanceof RuntimeException) {
+				throw (RuntimeException) processor.failure;
+			}
+			if (processor.failure instanceof Error) {
+				throw (Error) processor.failure;
+			}
+			throw new IllegalStateException(processor.failure);
+		}
+	}
+
+	@SupportedAnnotationTypes("*")
+	private static class CallbackProcessor extends AbstractProcessor {
+
+		private final Consumer<ProcessingEnvironment> callback;
+
+		private boolean called;
+
+		private Throwable failure;
+
+		CallbackProcessor(Consumer<ProcessingEnvironment> callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public SourceVersion getSupportedSourceVersion() {
+			return SourceVersion.latestSupported();
+		}
+
+		@Override
+		public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+			if (!this.called) {
+				this.called = true;
+				try {
+					this.callback.accept(this.processingEnv);
+				}
+				catch (Throwable t) {
+					this.failure = t;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	private static class SourceFile extends SimpleJavaFileObject {
+
+		private final String content;
+
+		SourceFile(String name, String content) {
+			super(URI.create("string:///" + name + Kind.SOURCE.extension), Kind.SOURCE);
+			this.content = content;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return this.content;
+		}
+
+	}
+
+}
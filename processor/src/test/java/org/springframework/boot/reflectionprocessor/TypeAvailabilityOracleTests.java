@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.boot.reflectionprocessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TypeAvailabilityOracle}.
+ *
+ * @author Andy Clement
+ */
+public class TypeAvailabilityOracleTests {
+
+	@Test
+	public void positiveAndNegativeAnswersAreRemembered() {
+		TestProcessingEnvironment.run((env) -> {
+			TypeAvailabilityOracle oracle = new TypeAvailabilityOracle(env.getElementUtils(), null);
+			assertTrue(oracle.isAvailable("java.lang.String"));
+			assertFalse(oracle.isAvailable("com.example.Missing"));
+			assertEquals(2, oracle.getLookups());
+			for (int i = 0; i < 8; i++) {
+				assertTrue(oracle.isAvailable("java.lang.String"));
+				assertFalse(oracle.isAvailable("com.example.Missing"));
+			}
+			assertEquals(2, oracle.getLookups());
+			assertEquals(16, oracle.getHits());
+			assertEquals(16d / 18d, oracle.getHitRate(), 0.0001d);
+		});
+	}
+
+	@Test
+	public void answersForSourceTypesAreNotCached() throws IOException {
+		File cacheFile = new File(Files.createTempDirectory("cache").toFile(), ClasspathCache.CACHE_FILE);
+		ClasspathCache cache = ClasspathCache.load(cacheFile, Collections.emptyList());
+		// Recorded by a build where Sample was not yet a source
+		cache.putAvailability("Sample", false);
+		TestProcessingEnvironment.run((env) -> {
+			TypeAvailabilityOracle oracle = new TypeAvailabilityOracle(env.getElementUtils(), cache,
+					Collections.singleton("Sample"));
+			assertTrue(oracle.isAvailable("Sample"));
+			assertTrue(oracle.isAvailable("java.lang.String"));
+			assertFalse(oracle.isAvailable("com.example.Missing"));
+			Map<String, Boolean> expected = new TreeMap<>();
+			expected.put("Sample", true);
+			expected.put("com.example.Missing", false);
+			assertEquals(expected, oracle.getSourceDependentAnswers());
+		});
+		assertEquals(Boolean.FALSE, cache.getAvailability("Sample"));
+		assertEquals(Boolean.TRUE, cache.getAvailability("java.lang.String"));
+		assertEquals(Boolean.FALSE, cache.getAvailability("com.example.Missing"));
+		assertNull(cache.getAvailability("com.example.Other"));
+	}
+
+}